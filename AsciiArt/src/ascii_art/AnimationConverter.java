@@ -0,0 +1,118 @@
+package ascii_art;
+
+import ascii_art.img_to_char.AnimationCharMatcher;
+import ascii_output.AsciiAnimationOutput;
+import ascii_output.ConsoleAnimationOutput;
+import ascii_output.HtmlAnimationOutput;
+import image.Animation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Converts an animated GIF, or a sequence of frame files, to an Ascii animation played in an html page
+ * or in the console.
+ * @author eran_turgeman
+ */
+class AnimationConverter {
+    // =============================== private constants ===============================
+    private static final String USAGE = "USAGE: java asciiArt --animate <gif, frames directory or frame list> " +
+            "[--chars <range>] [--res <chars in row>] [--out <html file>] [--console]";
+    private static final String GIF_EXTENSION = ".gif";
+    private static final String DEFAULT_OUTPUT_FILENAME = "animation.html";
+    private static final String SUMMARY_REPORT = "Converted %d frames, %d tiles computed and %d reused";
+    
+    // =============================== private fields ===============================
+    private final Animation animation;
+    private final Character[] charSet;
+    private final int charsInRow;
+    private final AsciiAnimationOutput output;
+    private final boolean isConsole;
+    private int frames;
+    
+    // =============================== package functions ===============================
+    
+    /**
+     * Parses the command line arguments of an animation conversion
+     * @param args the command line arguments, starting with "--animate"
+     * @return the animation converter, or null if the arguments are invalid (the usage is printed)
+     */
+    static AnimationConverter fromArgs(String[] args) {
+        if(args.length < 2){
+            System.err.println(USAGE);
+            return null;
+        }
+        String charRange = Shell.INITIAL_CHAR_RANGE;
+        int charsInRow = Shell.INITIAL_CHARS_IN_ROW;
+        String outputFilename = DEFAULT_OUTPUT_FILENAME;
+        boolean isConsole = false;
+        try{
+            for(int i = 2; i < args.length; i++){
+                switch(args[i]){
+                    case "--chars": charRange = args[++i]; break;
+                    case "--res": charsInRow = Integer.parseInt(args[++i]); break;
+                    case "--out": outputFilename = args[++i]; break;
+                    case "--console": isConsole = true; break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        }catch(IndexOutOfBoundsException | IllegalArgumentException e){
+            System.err.println(USAGE);
+            return null;
+        }
+        char[] range = Shell.parseCharRange(charRange);
+        if(range == null || charsInRow <= 0){
+            System.err.println(USAGE);
+            return null;
+        }
+        Animation animation;
+        if(args[1].toLowerCase().endsWith(GIF_EXTENSION)){
+            animation = Animation.fromGif(args[1]);
+        }else{
+            try{
+                List<String> frames = BatchConverter.listImages(Path.of(args[1])).stream()
+                        .map(Path::toString).collect(Collectors.toList());
+                animation = Animation.fromFrameFiles(frames);
+            }catch(IOException e){
+                System.err.println("Failed to list frames of " + args[1]);
+                return null;
+            }
+        }
+        AsciiAnimationOutput output = isConsole ? new ConsoleAnimationOutput() :
+                new HtmlAnimationOutput(outputFilename, Shell.FONT_NAME);
+        return new AnimationConverter(animation, BatchConverter.toCharSet(range), charsInRow, output, isConsole);
+    }
+    
+    /**
+     * Converts and outputs all the frames, then prints how many tiles were reused between frames
+     */
+    void run() {
+        AnimationCharMatcher matcher = new AnimationCharMatcher(animation, Shell.FONT_NAME);
+        try{
+            matcher.chooseChars(charsInRow, charSet, (chars, delayMillis) -> {
+                frames++;
+                output.outputFrame(chars, delayMillis);
+            });
+        }catch(UncheckedIOException e){
+            System.err.println("Failed to decode animation: " + e.getCause().getMessage());
+        }
+        output.finish();
+        if(!isConsole){
+            System.out.println(String.format(SUMMARY_REPORT, frames, matcher.getComputedTiles(),
+                    matcher.getReusedTiles()));
+        }
+    }
+    
+    // =============================== private functions ===============================
+    private AnimationConverter(Animation animation, Character[] charSet, int charsInRow,
+                               AsciiAnimationOutput output, boolean isConsole) {
+        this.animation = animation;
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.output = output;
+        this.isConsole = isConsole;
+    }
+}
@@ -0,0 +1,267 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts many images to Ascii html files without user interaction.
+ * Images are loaded and written on I/O threads, while the conversions themselves run on a fixed
+ * pool sized for the CPU. All the conversions share the application's glyph atlas, so every char
+ * is rendered only once for the whole batch.
+ * @author eran_turgeman
+ */
+class BatchConverter {
+    // =============================== private constants ===============================
+    private static final String USAGE = "USAGE: java asciiArt --batch <directory or file list> " +
+            "[--chars <range>] [--res <chars in row>] [--out <directory>] [--threads <amount>] [--gzip]";
+    private static final String HTML_EXTENSION = ".html";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final String IMAGE_REPORT = "%s: load %.1f ms, convert %.1f ms, write %.1f ms";
+    private static final String FAILED_IMAGE_REPORT = "%s: FAILED (%s)";
+    private static final String SUMMARY_REPORT = "Converted %d of %d images in %.2f s (%.1f images/s)";
+    
+    // =============================== private fields ===============================
+    private final List<Path> images;
+    private final List<String> outputNames;
+    private final Character[] charSet;
+    private final int charsInRow;
+    private final Path outputDir;
+    private final int threads;
+    private final boolean gzip;
+    
+    // =============================== package functions ===============================
+    
+    /**
+     * Parses the command line arguments of a batch conversion
+     * @param args the command line arguments, starting with "--batch"
+     * @return the batch converter, or null if the arguments are invalid (the usage is printed)
+     */
+    static BatchConverter fromArgs(String[] args) {
+        if(args.length < 2){
+            System.err.println(USAGE);
+            return null;
+        }
+        String charRange = Shell.INITIAL_CHAR_RANGE;
+        int charsInRow = Shell.INITIAL_CHARS_IN_ROW;
+        Path outputDir = Path.of(".");
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean gzip = false;
+        try{
+            for(int i = 2; i < args.length; i++){
+                switch(args[i]){
+                    case "--chars": charRange = args[++i]; break;
+                    case "--res": charsInRow = Integer.parseInt(args[++i]); break;
+                    case "--out": outputDir = Path.of(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--gzip": gzip = true; break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        }catch(IndexOutOfBoundsException | IllegalArgumentException e){
+            System.err.println(USAGE);
+            return null;
+        }
+        char[] range = Shell.parseCharRange(charRange);
+        if(range == null || charsInRow <= 0 || threads <= 0){
+            System.err.println(USAGE);
+            return null;
+        }
+        try{
+            return new BatchConverter(listImages(Path.of(args[1])), toCharSet(range), charsInRow, outputDir,
+                    threads, gzip);
+        }catch(IOException e){
+            System.err.println("Failed to list images of " + args[1]);
+            return null;
+        }
+    }
+    
+    /**
+     * Converts all the images and prints the time each one took, followed by the overall throughput
+     */
+    void run() {
+        ForkJoinPool cpuPool = new ForkJoinPool(threads);
+        ExecutorService ioExecutor = ThreadPools.newIoExecutor();
+        Semaphore inFlight = new Semaphore(threads * IN_FLIGHT_PER_THREAD);
+        List<CompletableFuture<Result>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try{
+            Files.createDirectories(outputDir);
+            for(int i = 0; i < images.size(); i++){
+                Path path = images.get(i);
+                Path output = outputDir.resolve(outputNames.get(i));
+                inFlight.acquireUninterruptibly();
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try{
+                        return convert(path, output, cpuPool);
+                    }catch(RuntimeException e){
+                        // a corrupt image fails alone, the rest of the batch is still converted
+                        return new Result(false, String.format(FAILED_IMAGE_REPORT, path, e));
+                    }finally{
+                        inFlight.release();
+                    }
+                }, ioExecutor));
+            }
+            int converted = 0;
+            for(CompletableFuture<Result> result: results){
+                Result imageResult = result.join();
+                if(imageResult.succeeded){
+                    converted++;
+                }
+                System.out.println(imageResult.report);
+            }
+            double seconds = (System.nanoTime() - start) / NANOS_IN_SECOND;
+            System.out.println(String.format(SUMMARY_REPORT, converted, images.size(), seconds,
+                    converted / seconds));
+        }catch(IOException e){
+            System.err.println("Failed to create output directory " + outputDir);
+        }finally{
+            ioExecutor.shutdown();
+            cpuPool.shutdown();
+        }
+    }
+    
+    // =============================== private functions ===============================
+    private BatchConverter(List<Path> images, Character[] charSet, int charsInRow, Path outputDir, int threads,
+                           boolean gzip) {
+        this.images = images;
+        this.outputNames = outputNames(images, gzip);
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.outputDir = outputDir;
+        this.threads = threads;
+        this.gzip = gzip;
+    }
+    
+    /*
+     * the images of a directory (every regular file in it), or of a file listing an image path in every line
+     */
+    static List<Path> listImages(Path source) throws IOException {
+        if(Files.isDirectory(source)){
+            try(Stream<Path> files = Files.list(source)){
+                return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        try(Stream<String> lines = Files.lines(source)){
+            return lines.map(String::trim).filter(line -> !line.isEmpty()).map(Path::of)
+                    .collect(Collectors.toList());
+        }
+    }
+    
+    /*
+     * the name of the html file of every image: the image's name without its extension, or with it when
+     * several images of the batch share a name without their extensions (a.png and a.jpg), and numbered if
+     * even the full names collide (images of different directories of a file list). names are compared
+     * ignoring case, since the output directory may be on a case insensitive file system
+     */
+    static List<String> outputNames(List<Path> images, boolean gzip) {
+        Map<String, Integer> baseNameCounts = new HashMap<>();
+        for(Path path: images){
+            baseNameCounts.merge(baseName(path).toLowerCase(Locale.ROOT), 1, Integer::sum);
+        }
+        Set<String> taken = new HashSet<>();
+        List<String> names = new ArrayList<>(images.size());
+        for(Path path: images){
+            String baseName = baseName(path);
+            String name = baseNameCounts.get(baseName.toLowerCase(Locale.ROOT)) == 1 ? baseName :
+                    path.getFileName().toString();
+            String uniqueName = name;
+            for(int copy = 2; !taken.add(uniqueName.toLowerCase(Locale.ROOT)); copy++){
+                uniqueName = name + "-" + copy;
+            }
+            names.add(uniqueName + HTML_EXTENSION + (gzip ? GZIP_EXTENSION : ""));
+        }
+        return names;
+    }
+    
+    private static String baseName(Path path) {
+        return path.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+    }
+    
+    static Character[] toCharSet(char[] range) {
+        char first = (char)Math.min(range[0], range[1]), last = (char)Math.max(range[0], range[1]);
+        Character[] charSet = new Character[last - first + 1];
+        for(int i = 0; i < charSet.length; i++){
+            charSet[i] = (char)(first + i);
+        }
+        return charSet;
+    }
+    
+    /*
+     * the closest resolution to the requested one that the Shell would allow for the image
+     */
+    static int clampCharsInRow(Image image, int charsInRow) {
+        int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+        int maxCharsInRow = Math.max(minCharsInRow, image.getWidth() / Shell.MIN_PIXELS_PER_CHAR);
+        return Math.max(Math.min(charsInRow, maxCharsInRow), minCharsInRow);
+    }
+    
+    /*
+     * loads, converts and writes a single image. runs on an I/O thread, the conversion itself is handed to
+     * the CPU pool. the image is closed once converted, so a streamed image doesn't keep its file open
+     */
+    private Result convert(Path path, Path output, ForkJoinPool cpuPool) {
+        long start = System.nanoTime();
+        Image image = Image.fromFile(path.toString());
+        if(image == null){
+            return new Result(false, String.format(FAILED_IMAGE_REPORT, path, "can't open image"));
+        }
+        try(image){
+            return convertImage(path, image, output, start, cpuPool);
+        }
+    }
+    
+    private Result convertImage(Path path, Image image, Path output, long start, ForkJoinPool cpuPool) {
+        long loaded = System.nanoTime();
+        int imageCharsInRow = clampCharsInRow(image, charsInRow);
+        char[][] chars;
+        try{
+            chars = cpuPool.submit(() -> new BrightnessImgCharMatcher(image, Shell.FONT_NAME, cpuPool)
+                    .chooseChars(imageCharsInRow, charSet)).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return new Result(false, String.format(FAILED_IMAGE_REPORT, path, "interrupted"));
+        }catch(ExecutionException e){
+            return new Result(false, String.format(FAILED_IMAGE_REPORT, path, e.getCause()));
+        }
+        long convertedTime = System.nanoTime();
+        HtmlAsciiOutput html = new HtmlAsciiOutput(output.toString(), Shell.FONT_NAME, !gzip, gzip);
+        html.output(chars);
+        if(html.getBytesWritten() < 0){
+            return new Result(false, String.format(FAILED_IMAGE_REPORT, path, "can't write " + output));
+        }
+        long written = System.nanoTime();
+        return new Result(true, String.format(IMAGE_REPORT, path, (loaded - start) / NANOS_IN_MILLI,
+                (convertedTime - loaded) / NANOS_IN_MILLI, (written - convertedTime) / NANOS_IN_MILLI));
+    }
+    
+    /*
+     * the outcome of converting a single image
+     */
+    private static class Result {
+        private final boolean succeeded;
+        private final String report;
+        
+        Result(boolean succeeded, String report) {
+            this.succeeded = succeeded;
+            this.report = report;
+        }
+    }
+}
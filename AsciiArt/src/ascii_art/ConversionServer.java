@@ -0,0 +1,441 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.GlyphAtlas;
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long running local HTTP server converting posted images to Ascii html or text.
+ * Requests are handled on I/O threads (virtual threads where the runtime has them), while the images are
+ * decoded and converted on a fixed pool sized for the CPU, so no more images are held decoded at once
+ * than there are threads converting them. All the conversions share the application's glyph
+ * atlas, and the responses of recent requests are kept in a cache bounded by the total size of their bodies,
+ * so repeated requests are answered without converting again. Requests beyond the queue's capacity are rejected with 503.
+ * @author eran_turgeman
+ */
+class ConversionServer {
+    // =============================== private constants ===============================
+    private static final String USAGE = "USAGE: java asciiArt --serve [--port <port>] [--threads <amount>] " +
+            "[--queue <pending requests>] [--cache <cached megabytes>]";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int QUEUE_PER_THREAD = 4;
+    private static final int DEFAULT_CACHED_MEGABYTES = 64;
+    private static final int BYTES_IN_MEGABYTE = 1 << 20;
+    private static final int MAX_IMAGE_BYTES = 32 << 20;
+    private static final long MAX_IMAGE_PIXELS = 1L << 26;
+    private static final int RETRY_AFTER_SECONDS = 1;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final String CONVERT_PATH = "/convert";
+    private static final String METRICS_PATH = "/metrics";
+    private static final String HTML_FORMAT = "html";
+    private static final String TEXT_FORMAT = "text";
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    private static final String SERVING_MESSAGE = "Serving on http://localhost:%d%s and %s";
+    private static final String METRICS_REPORT = "requests %d%n" +
+            "rejected %d%n" +
+            "client_errors %d%n" +
+            "failed %d%n" +
+            "in_flight %d%n" +
+            "cache_hits %d%n" +
+            "cache_misses %d%n" +
+            "cached_responses %d%n" +
+            "cached_bytes %d%n" +
+            "conversions %d%n" +
+            "convert_ms_total %.1f%n" +
+            "rendered_glyphs %d%n";
+
+    // =============================== private fields ===============================
+    private final int port;
+    private final int threads;
+    private final int queueCapacity;
+    private final long cacheCapacityBytes;
+    // least recently used first, guarded by its own lock together with cachedBytes
+    private final Map<String, Response> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder conversions = new LongAdder();
+    private final LongAdder convertNanos = new LongAdder();
+    private Semaphore queue;
+    private ForkJoinPool cpuPool;
+
+    // =============================== package functions ===============================
+
+    /**
+     * Parses the command line arguments of the server
+     * @param args the command line arguments, starting with "--serve"
+     * @return the server, or null if the arguments are invalid (the usage is printed)
+     */
+    static ConversionServer fromArgs(String[] args) {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = -1;
+        int cachedMegabytes = DEFAULT_CACHED_MEGABYTES;
+        try{
+            for(int i = 1; i < args.length; i++){
+                switch(args[i]){
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--queue": queueCapacity = Integer.parseInt(args[++i]); break;
+                    case "--cache": cachedMegabytes = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        }catch(IndexOutOfBoundsException | IllegalArgumentException e){
+            System.err.println(USAGE);
+            return null;
+        }
+        if(queueCapacity == -1){
+            queueCapacity = threads * QUEUE_PER_THREAD;
+        }
+        if(port < 0 || threads <= 0 || queueCapacity <= 0 || cachedMegabytes < 0){
+            System.err.println(USAGE);
+            return null;
+        }
+        return new ConversionServer(port, threads, queueCapacity, (long)cachedMegabytes * BYTES_IN_MEGABYTE);
+    }
+
+    /**
+     * Starts serving on the loopback address. The server keeps running until the process is stopped
+     * @throws IOException if the server can't be bound to its port
+     */
+    void run() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService ioExecutor = ThreadPools.newIoExecutor();
+        cpuPool = new ForkJoinPool(threads);
+        queue = new Semaphore(queueCapacity);
+        server.createContext(CONVERT_PATH, this::handleConvert);
+        server.createContext(METRICS_PATH, this::handleMetrics);
+        server.setExecutor(ioExecutor);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            ioExecutor.shutdown();
+            cpuPool.shutdown();
+        }));
+        System.out.println(String.format(SERVING_MESSAGE, server.getAddress().getPort(), CONVERT_PATH,
+                METRICS_PATH));
+    }
+
+    // =============================== private functions ===============================
+    private ConversionServer(int port, int threads, int queueCapacity, long cacheCapacityBytes) {
+        this.port = port;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.cacheCapacityBytes = cacheCapacityBytes;
+    }
+
+    /*
+     * POST /convert?chars=<range>&res=<chars in row>&format=<html|text>&color=<true|false> with the image's
+     * bytes as the body
+     */
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        try(exchange){
+            requests.increment();
+            if(!"POST".equals(exchange.getRequestMethod())){
+                clientErrors.increment();
+                sendError(exchange, 405, "Use POST with the image as the body");
+                return;
+            }
+            if(!queue.tryAcquire()){
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+                sendError(exchange, 503, "Too many pending conversions");
+                return;
+            }
+            try{
+                Response response = convert(exchange);
+                // a bad request is the client's error, only a request that fails to convert is a failure
+                if(response.status >= 500){
+                    failed.increment();
+                }else if(response.status >= 400){
+                    clientErrors.increment();
+                }
+                send(exchange, response);
+            }finally{
+                queue.release();
+            }
+        }
+    }
+
+    /*
+     * GET /metrics, plain text "name value" lines
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try(exchange){
+            int cached;
+            long bytes;
+            synchronized(responses){
+                cached = responses.size();
+                bytes = cachedBytes;
+            }
+            String report = String.format(METRICS_REPORT, requests.sum(), rejected.sum(), clientErrors.sum(),
+                    failed.sum(), queueCapacity - queue.availablePermits(), cacheHits.sum(), cacheMisses.sum(),
+                    cached, bytes, conversions.sum(), convertNanos.sum() / NANOS_IN_MILLI,
+                    GlyphAtlas.getShared().getRenderedGlyphs());
+            send(exchange, new Response(200, TEXT_CONTENT_TYPE, report.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    /*
+     * reads the request, answers it from the cache or decodes and converts the image on the CPU pool
+     */
+    private Response convert(HttpExchange exchange) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        char[] range = Shell.parseCharRange(params.getOrDefault("chars", Shell.INITIAL_CHAR_RANGE));
+        String format = params.getOrDefault("format", HTML_FORMAT);
+        boolean isColored = Boolean.parseBoolean(params.get("color"));
+        int charsInRow = parseCharsInRow(params.getOrDefault("res", Integer.toString(Shell.INITIAL_CHARS_IN_ROW)));
+        if(range == null || charsInRow <= 0 || !(format.equals(HTML_FORMAT) || format.equals(TEXT_FORMAT))){
+            return error(400, "Invalid chars, res or format");
+        }
+        byte[] body = readBody(exchange.getRequestBody());
+        if(body == null){
+            return error(413, "Images are limited to " + MAX_IMAGE_BYTES + " bytes");
+        }
+        String key = cacheKey(body, range, charsInRow, format, isColored);
+        synchronized(responses){
+            Response cached = responses.get(key);
+            if(cached != null){
+                cacheHits.increment();
+                return cached;
+            }
+        }
+        cacheMisses.increment();
+        long start = System.nanoTime();
+        Response response;
+        try{
+            response = cpuPool.submit(() -> convert(body, range, charsInRow, format, isColored)).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return error(500, "Interrupted");
+        }catch(ExecutionException e){
+            return error(500, "Conversion failed: " + e.getCause());
+        }
+        if(response.status != 200){
+            return response;
+        }
+        convertNanos.add(System.nanoTime() - start);
+        conversions.increment();
+        cache(key, response);
+        return response;
+    }
+
+    /*
+     * decodes and converts a posted image, on a thread of the CPU pool
+     */
+    private Response convert(byte[] body, char[] range, int charsInRow, String format, boolean isColored)
+            throws IOException {
+        ImageReader reader = null;
+        BufferedImage bufferedImage;
+        try{
+            reader = openReader(body);
+            if(reader == null){
+                return error(415, "Unsupported image format");
+            }
+            // the dimensions are read from the header, so a small file declaring a huge canvas is rejected
+            // before any of its pixels are allocated
+            if((long)reader.getWidth(0) * reader.getHeight(0) > MAX_IMAGE_PIXELS){
+                return error(413, "Images are limited to " + MAX_IMAGE_PIXELS + " pixels");
+            }
+            bufferedImage = reader.read(0);
+        }catch(IOException e){
+            return error(415, "Unreadable image: " + e.getMessage());
+        }catch(RuntimeException e){
+            // decoders throw runtime exceptions as well on some corrupt images
+            return error(415, "Unreadable image: " + e);
+        }finally{
+            if(reader != null){
+                ((ImageInputStream)reader.getInput()).close();
+                reader.dispose();
+            }
+        }
+        Image image = Image.fromBufferedImage(bufferedImage);
+        int imageCharsInRow = BatchConverter.clampCharsInRow(image, charsInRow);
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, Shell.FONT_NAME, cpuPool);
+        // text has no colors, so they're only computed for html
+        int[][] colors = isColored && format.equals(HTML_FORMAT) ? matcher.chooseColors(imageCharsInRow) : null;
+        Conversion conversion = new Conversion(matcher.chooseChars(imageCharsInRow,
+                BatchConverter.toCharSet(range)), colors);
+        return format.equals(HTML_FORMAT) ?
+                new Response(200, HTML_CONTENT_TYPE, toHtml(conversion)) :
+                new Response(200, TEXT_CONTENT_TYPE, toText(conversion.chars));
+    }
+
+    /*
+     * keeps a response, evicting the least recently used ones while the bodies exceed the cache's capacity.
+     * a response larger than the whole cache isn't kept
+     */
+    private void cache(String key, Response response) {
+        if(response.body.length > cacheCapacityBytes){
+            return;
+        }
+        synchronized(responses){
+            Response replaced = responses.put(key, response);
+            cachedBytes += response.body.length - (replaced == null ? 0 : replaced.body.length);
+            Iterator<Response> eldest = responses.values().iterator();
+            while(cachedBytes > cacheCapacityBytes){
+                cachedBytes -= eldest.next().body.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static byte[] toHtml(Conversion conversion) throws IOException {
+        StringWriter writer = new StringWriter();
+        new HtmlAsciiOutput(null, Shell.FONT_NAME).writeDocument(writer, conversion.chars, conversion.colors);
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toText(char[][] chars) {
+        StringBuilder text = new StringBuilder();
+        for(char[] row: chars){
+            text.append(row).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * a reader of the image's format with the image as its input, or null if no reader supports it
+     */
+    private static ImageReader openReader(byte[] image) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image));
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()){
+            return null;
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    /*
+     * the body of the request, or null if it's larger than an image may be
+     */
+    private static byte[] readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_IMAGE_BYTES + 1);
+        return bytes.length > MAX_IMAGE_BYTES ? null : bytes;
+    }
+
+    /*
+     * identifies a request by the digest of its image and its parameters
+     */
+    private static String cacheKey(byte[] image, char[] range, int charsInRow, String format, boolean isColored) {
+        MessageDigest digest;
+        try{
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        StringBuilder key = new StringBuilder();
+        for(byte b: digest.digest(image)){
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        char first = (char)Math.min(range[0], range[1]), last = (char)Math.max(range[0], range[1]);
+        return key.append(':').append(first).append(last).append(':').append(charsInRow).append(':')
+                .append(format).append(':').append(isColored).toString();
+    }
+
+    /*
+     * the chars in a row of a request, or -1 if they aren't a number
+     */
+    private static int parseCharsInRow(String res) {
+        try{
+            return Integer.parseInt(res);
+        }catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if(query == null){
+            return params;
+        }
+        for(String param: query.split("&")){
+            int equals = param.indexOf('=');
+            if(equals > 0){
+                params.put(URLDecoder.decode(param.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, TEXT_CONTENT_TYPE, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, error(status, message));
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", response.contentType);
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        try(OutputStream out = exchange.getResponseBody()){
+            out.write(response.body);
+        }
+    }
+
+    /*
+     * the chars of a converted image and their colors, or null colors if the request isn't colored
+     */
+    private static class Conversion {
+        private final char[][] chars;
+        private final int[][] colors;
+
+        Conversion(char[][] chars, int[][] colors) {
+            this.chars = chars;
+            this.colors = colors;
+        }
+    }
+
+    /*
+     * a complete response, kept in the cache as is
+     */
+    private static class Response {
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+
+        Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
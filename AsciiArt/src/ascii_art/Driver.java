@@ -8,14 +8,42 @@ import java.util.logging.Logger;
  * Main class, responsible for running the AsciiArt application
  */
 public class Driver {
+    private static final String BATCH_FLAG = "--batch";
+    private static final String ANIMATE_FLAG = "--animate";
+    private static final String SERVE_FLAG = "--serve";
+    
     /**
-     * This is the main function. checks that a valid path to an image was received and runs the application
+     * This is the main function. checks that a valid path to an image was received and runs the application,
+     * or runs a non-interactive batch or animation conversion when started with --batch or --animate, or a
+     * local conversion server when started with --serve
      * @param args command line arguments
      * @throws Exception
      */
     public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals(BATCH_FLAG)) {
+            BatchConverter batch = BatchConverter.fromArgs(args);
+            if (batch != null) {
+                batch.run();
+            }
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(ANIMATE_FLAG)) {
+            AnimationConverter animation = AnimationConverter.fromArgs(args);
+            if (animation != null) {
+                animation.run();
+            }
+            return;
+        }
+        if (args.length >= 1 && args[0].equals(SERVE_FLAG)) {
+            ConversionServer server = ConversionServer.fromArgs(args);
+            if (server != null) {
+                server.run();
+            }
+            return;
+        }
         if (args.length != 1) {
-            System.err.println("USAGE: java asciiArt ");
+            System.err.println("USAGE: java asciiArt <image> | " + BATCH_FLAG + " <directory or file list> ... | " +
+                    ANIMATE_FLAG + " <gif, frames directory or frame list> ... | " + SERVE_FLAG + " ...");
             return;
         }
         Image img = Image.fromFile(args[0]);
@@ -23,6 +51,8 @@ public class Driver {
             Logger.getGlobal().severe("Failed to open image file " + args[0]);
             return;
         }
-        new Shell(img).run();
+        try (img) {
+            new Shell(img).run();
+        }
     }
 }
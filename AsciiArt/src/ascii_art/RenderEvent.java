@@ -0,0 +1,58 @@
+package ascii_art;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event of a render of the Shell, holding the same breakdown as the "stats" command.
+ * Events are only recorded while a flight recording is running, e.g. when started with
+ * -XX:StartFlightRecording, otherwise creating them costs next to nothing.
+ * @author eran_turgeman
+ */
+@Name("ascii_art.Render")
+@Label("Ascii Render")
+@Category("AsciiArt")
+@Description("Converting the image to chars and writing them")
+class RenderEvent extends jdk.jfr.Event {
+    @Label("Chars In Row")
+    int charsInRow;
+
+    @Label("Glyphs Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long glyphNanos;
+
+    @Label("Brightness Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long brightnessNanos;
+
+    @Label("Matching Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long matchNanos;
+
+    @Label("Output Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long outputNanos;
+
+    @Label("Tiles")
+    long tiles;
+
+    @Label("Computed Tiles")
+    long computedTiles;
+
+    @Label("Cache Hits")
+    long cacheHits;
+
+    @Label("Cache Misses")
+    long cacheMisses;
+
+    @Label("Rendered Glyphs")
+    long renderedGlyphs;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
@@ -0,0 +1,108 @@
+package ascii_art;
+
+import ascii_art.img_to_char.ConversionStats;
+
+/**
+ * A package-private class of the package ascii_art.
+ * Keeps the breakdown of the Shell's last render and the totals of all its renders. Renders are recorded on
+ * the Shell's render thread and reported on its command thread, so the access is synchronized.
+ * @author eran_turgeman
+ */
+class RenderStats {
+    // =============================== private constants ===============================
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final String NO_RENDERS = "No render yet";
+    private static final String PHASE_LINE = "  %-11s%10.3f ms%n";
+    private static final String COUNTERS_LINE = "  %d tiles (%d computed), cache %d hits / %d misses, " +
+            "%d glyphs rendered, %s bytes written%n";
+    
+    // =============================== private fields ===============================
+    private final long[] last = new long[Counter.values().length];
+    private final long[] totals = new long[Counter.values().length];
+    private int lastCharsInRow;
+    private int renders;
+    
+    /*
+     * the counters kept for every render
+     */
+    private enum Counter {
+        GLYPH_NANOS, BRIGHTNESS_NANOS, MATCH_NANOS, OUTPUT_NANOS, TILES, COMPUTED_TILES, CACHE_HITS,
+        CACHE_MISSES, RENDERED_GLYPHS, BYTES_WRITTEN
+    }
+    
+    // =============================== package functions ===============================
+    
+    /**
+     * Records a render, and emits it as a JFR event if a flight recording is running
+     * @param charsInRow the resolution of the render
+     * @param conversion the breakdown of the conversion to chars
+     * @param outputNanos the time spent writing the chars
+     * @param bytesWritten the number of bytes written, or -1 if unknown
+     * @param event the event started when the render started
+     */
+    synchronized void record(int charsInRow, ConversionStats conversion, long outputNanos, long bytesWritten,
+                RenderEvent event){
+        lastCharsInRow = charsInRow;
+        last[Counter.GLYPH_NANOS.ordinal()] = conversion.getGlyphNanos();
+        last[Counter.BRIGHTNESS_NANOS.ordinal()] = conversion.getBrightnessNanos();
+        last[Counter.MATCH_NANOS.ordinal()] = conversion.getMatchNanos();
+        last[Counter.OUTPUT_NANOS.ordinal()] = outputNanos;
+        last[Counter.TILES.ordinal()] = conversion.getTiles();
+        last[Counter.COMPUTED_TILES.ordinal()] = conversion.getComputedTiles();
+        last[Counter.CACHE_HITS.ordinal()] = conversion.getCacheHits();
+        last[Counter.CACHE_MISSES.ordinal()] = conversion.getCacheMisses();
+        last[Counter.RENDERED_GLYPHS.ordinal()] = conversion.getRenderedGlyphs();
+        last[Counter.BYTES_WRITTEN.ordinal()] = bytesWritten;
+        for(int i = 0; i < totals.length; i++){
+            totals[i] += Math.max(0, last[i]);
+        }
+        renders++;
+        
+        event.end();
+        if(event.shouldCommit()){
+            event.charsInRow = charsInRow;
+            event.glyphNanos = conversion.getGlyphNanos();
+            event.brightnessNanos = conversion.getBrightnessNanos();
+            event.matchNanos = conversion.getMatchNanos();
+            event.outputNanos = outputNanos;
+            event.tiles = conversion.getTiles();
+            event.computedTiles = conversion.getComputedTiles();
+            event.cacheHits = conversion.getCacheHits();
+            event.cacheMisses = conversion.getCacheMisses();
+            event.renderedGlyphs = conversion.getRenderedGlyphs();
+            event.bytesWritten = bytesWritten;
+            event.commit();
+        }
+    }
+    
+    /**
+     * @return the breakdown of the last render followed by the totals of all the renders
+     */
+    synchronized String report(){
+        if(renders == 0){
+            return NO_RENDERS;
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Last render, %d chars in row:%n", lastCharsInRow));
+        appendCounters(report, last);
+        report.append(String.format("Totals of %d renders:%n", renders));
+        appendCounters(report, totals);
+        return report.toString().trim();
+    }
+    
+    // =============================== private functions ===============================
+    private static void appendCounters(StringBuilder report, long[] counters){
+        long total = 0;
+        String[] phases = {"glyphs", "brightness", "matching", "output"};
+        for(int i = 0; i < phases.length; i++){
+            report.append(String.format(PHASE_LINE, phases[i], counters[i] / NANOS_IN_MILLI));
+            total += counters[i];
+        }
+        report.append(String.format(PHASE_LINE, "total", total / NANOS_IN_MILLI));
+        long bytes = counters[Counter.BYTES_WRITTEN.ordinal()];
+        report.append(String.format(COUNTERS_LINE, counters[Counter.TILES.ordinal()],
+                counters[Counter.COMPUTED_TILES.ordinal()], counters[Counter.CACHE_HITS.ordinal()],
+                counters[Counter.CACHE_MISSES.ordinal()], counters[Counter.RENDERED_GLYPHS.ordinal()],
+                bytes < 0 ? "unknown" : Long.toString(bytes)));
+    }
+}
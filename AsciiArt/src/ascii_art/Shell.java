@@ -1,11 +1,30 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharRenderer;
+import ascii_art.img_to_char.ConversionProgress;
+import ascii_art.img_to_char.ConversionStats;
+import ascii_art.img_to_char.GlyphAtlas;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
 import ascii_output.AsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.Image;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
 /**
@@ -13,6 +32,12 @@ import java.util.stream.Stream;
  * @author eran_turgeman
  */
 public class Shell {
+    // =============================== package constants ===============================
+    static final String INITIAL_CHAR_RANGE = "0-9";
+    static final int INITIAL_CHARS_IN_ROW = 64;
+    static final int MIN_PIXELS_PER_CHAR = 2;
+    static final String FONT_NAME = "Courier new";
+    
     // =============================== private constants ===============================
     private static final String CMD_EXIT = "exit";
     private static final String INVALID_COMMAND = "ERROR!: Invalid command";
@@ -20,37 +45,71 @@ public class Shell {
     private static final int NO_PARAMS = 0;
     private static final int SINGLE_PARAM = 1;
     private static final String CHANGE_CHAR_SET_INVALID_INPUT = "ERROR!: Invalid input to %s chars command";
-    private static final String INITIAL_CHAR_RANGE = "0-9";
-    private static final int INITIAL_CHARS_IN_ROW = 64;
-    private static final int MIN_PIXELS_PER_CHAR = 2;
     private static final String RESOLUTION_CHANGE_MESSAGE = "Width set to %d";
     private static final int RES_CHANGE_MULT_FACTOR = 2;
     private static final String RES_UP_ERROR_MESSAGE = "ERROR!: You've reached the maximal resolution";
     private static final String RES_DOWN_ERROR_MESSAGE = "ERROR!: You've reached the minimal resolution";
     private static final String CHANGE_RESOLUTION_INVALID_INPUT = "ERROR!: Invalid input to resolution " +
             "change command";
-    private static final String FONT_NAME = "Courier new";
     private static final String OUTPUT_FILENAME = "out.html";
+    private static final String COLOR_MODE_MESSAGE = "Color mode %s";
+    private static final String SHAPE_MODE_MESSAGE = "Shape matching %s";
+    private static final String DITHER_MODE_MESSAGE = "Dithering %s";
+    private static final String REDRAW_MODE_MESSAGE = "Console redraw in place %s";
     private static final char FIRST_ASCII_CHAR = ' ';
     private static final char LAST_ASCII_CHAR = '~';
+    // a system property naming a file to keep the rendered glyphs in between runs
+    private static final String GLYPH_SNAPSHOT_PROPERTY = "ascii_art.glyphSnapshot";
+    private static final String GLYPH_SNAPSHOT_ERROR = "Failed to %s glyph snapshot \"%s\"";
+    private static final double SQUARE_CELL = 1;
+    private static final String RENDER_CANCELLED_MESSAGE = "Render cancelled";
+    private static final String NO_RENDER_MESSAGE = "No render in progress";
+    private static final String RENDER_PROGRESS_MESSAGE = "Rendering, pass %d: %d%% (%d of %d rows)";
+    // progress is only reported for renders running longer than this, in steps of PROGRESS_STEP percent
+    private static final long PROGRESS_DELAY_NANOS = 1_000_000_000L;
+    private static final int PROGRESS_STEP = 25;
+    // how often a render waiting for the background computation of its resolution checks it wasn't cancelled
+    private static final long WARM_LEVEL_POLL_MILLIS = 20;
     
     // =============================== private fields ===============================
     private final Set<Character> charSet;
     private final int minCharsInRow;
     private final int maxCharsInRow;
     private final ConsoleAsciiOutput consoleOutput;
+    // the brightness matcher draws the console in cells of the console's aspect, which need no padding
+    private final ConsoleAsciiOutput consoleCellOutput;
+    private final double consoleCellAspect;
+    // computes the brightness of the reachable resolutions in the background, at a low priority
+    private final ExecutorService warmer;
+    // every resolution reachable with "res up" and "res down" from the initial one, coarse to fine, or none
+    // for a streamed image, which would be decoded again for every resolution, competing with the renders
+    // for the rows it holds
+    private final List<Integer> resolutions;
+    // the background computation of every resolution, by cell aspect and chars in row
+    private final Map<Double, Map<Integer, FutureTask<Void>>> warmLevels = new ConcurrentHashMap<>();
+    // runs the renders one at a time, off the thread reading the commands
+    private final ExecutorService renderer;
+    // the last render requested, and its progress through which it's cancelled
+    private Future<?> renderFuture;
+    private ConversionProgress renderProgress;
     private int charsInRow;
     private final BrightnessImgCharMatcher charMatcher;
+    private final ShapeImgCharMatcher shapeMatcher;
     private final AsciiOutput htmlOutput;
+    private final RenderStats renderStats;
     private boolean isConsole;
+    private boolean isColored;
+    private boolean isShapeMatching;
+    private boolean isDithering;
+    private boolean isRedrawing;
     
-    // =============================== private class functions ===============================
+    // =============================== package class functions ===============================
     /*
      * gets a string represents a range of ascii chars and parse it to a two cells array where the first
      * cell is the range's beginning and the second cell is the range's ending.
      * in case of invalid range- returns null
      */
-    private static char[] parseCharRange(String param){
+    static char[] parseCharRange(String param){
         char[] result = new char[2];
         if(param.length() == 1){
             result[0] = param.charAt(0);
@@ -85,10 +144,19 @@ public class Shell {
         this.minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
         this.maxCharsInRow = image.getWidth() / MIN_PIXELS_PER_CHAR;
         this.charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, this.maxCharsInRow), this.minCharsInRow);
-        this.charMatcher = new BrightnessImgCharMatcher(image, FONT_NAME);
-        this.htmlOutput = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+        this.charMatcher = new BrightnessImgCharMatcher(image, FONT_NAME, ForkJoinPool.commonPool());
+        this.shapeMatcher = new ShapeImgCharMatcher(image, FONT_NAME, ForkJoinPool.commonPool());
+        this.htmlOutput = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME, true, false);
         this.consoleOutput = new ConsoleAsciiOutput();
+        this.consoleCellOutput = new ConsoleAsciiOutput(false);
+        this.consoleCellAspect = CharRenderer.getCellAspect(FONT_NAME);
         this.isConsole = false;
+        this.renderStats = new RenderStats();
+        this.warmer = Executors.newSingleThreadExecutor(ThreadPools.daemonThreads(Thread.MIN_PRIORITY));
+        this.renderer = Executors.newSingleThreadExecutor(ThreadPools.daemonThreads(Thread.NORM_PRIORITY));
+        this.resolutions = image.isStreamed() ? List.of() : reachableResolutions();
+        loadGlyphSnapshot();
+        startWarming(SQUARE_CELL);
     }
     
     /**
@@ -112,6 +180,9 @@ public class Shell {
             cmd = scanner.nextLine().trim();
             words = cmd.split("\\s+");
         }
+        finishRenders();
+        warmer.shutdownNow();
+        saveGlyphSnapshot();
     }
     
     // =============================== private functions ===============================
@@ -156,6 +227,39 @@ public class Shell {
                     break;
                 }
                 isConsole = true;
+                startWarming(consoleCellAspect);
+                break;
+            case "color":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                isColored = !isColored;
+                System.out.println(String.format(COLOR_MODE_MESSAGE, isColored ? "on" : "off"));
+                break;
+            case "shape":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                isShapeMatching = !isShapeMatching;
+                System.out.println(String.format(SHAPE_MODE_MESSAGE, isShapeMatching ? "on" : "off"));
+                break;
+            case "dither":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                isDithering = !isDithering;
+                System.out.println(String.format(DITHER_MODE_MESSAGE, isDithering ? "on" : "off"));
+                break;
+            case "redraw":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                isRedrawing = !isRedrawing;
+                System.out.println(String.format(REDRAW_MODE_MESSAGE, isRedrawing ? "on" : "off"));
                 break;
             case "render":
                 if(paramsAmount != NO_PARAMS){
@@ -164,6 +268,20 @@ public class Shell {
                 }
                 render();
                 break;
+            case "cancel":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                System.out.println(cancelRender() ? RENDER_CANCELLED_MESSAGE : NO_RENDER_MESSAGE);
+                break;
+            case "stats":
+                if(paramsAmount != NO_PARAMS){
+                    error = true;
+                    break;
+                }
+                System.out.println(renderStats.report());
+                break;
             default:
                 System.out.println(INVALID_COMMAND);
         }
@@ -193,8 +311,10 @@ public class Shell {
         }
         if(range != null && isAddition){
             Stream.iterate(range[0], c -> c <= range[1], c -> (char)((int)c+1)).forEach(charSet::add);
+            cancelRender();
         }else if(range != null){
             Stream.iterate(range[0], c -> c <= range[1], c -> (char)((int)c+1)).forEach(charSet::remove);
+            cancelRender();
         }else{
             String action;
             if(isAddition){
@@ -206,6 +326,81 @@ public class Shell {
         }
     }
     
+    /*
+     * all the resolutions reachable from the current one by repeatedly changing it with "res up" and
+     * "res down", sorted from the coarsest to the finest
+     */
+    private List<Integer> reachableResolutions(){
+        TreeSet<Integer> reachable = new TreeSet<>();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.push(charsInRow);
+        while(!toVisit.isEmpty()){
+            int res = toVisit.pop();
+            if(!reachable.add(res)){
+                continue;
+            }
+            if(res * RES_CHANGE_MULT_FACTOR <= maxCharsInRow){
+                toVisit.push(res * RES_CHANGE_MULT_FACTOR);
+            }
+            if(res / RES_CHANGE_MULT_FACTOR >= minCharsInRow){
+                toVisit.push(res / RES_CHANGE_MULT_FACTOR);
+            }
+        }
+        return new ArrayList<>(reachable);
+    }
+    
+    /*
+     * schedules the brightness of every reachable resolution to be computed in the background, coarse to
+     * fine, for cells of the given aspect. the coarse resolutions are cheap, so they're ready first
+     */
+    private void startWarming(double cellAspect){
+        if(warmLevels.containsKey(cellAspect)){
+            return;
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        Map<Integer, FutureTask<Void>> levels = new HashMap<>();
+        for(int res: resolutions){
+            FutureTask<Void> level = new FutureTask<>(() -> charMatcher.prepare(res, cellAspect), null);
+            levels.put(res, level);
+            tasks.add(level);
+        }
+        // the levels are published before they run, since the renderer looks them up on its own thread
+        warmLevels.put(cellAspect, levels);
+        tasks.forEach(warmer::execute);
+    }
+    
+    /*
+     * makes sure the background computation of the current resolution doesn't run alongside the render.
+     * a computation in progress is waited for, without waiting for any other resolution, and one that
+     * hasn't started is cancelled, leaving the render to compute the resolution on all the cores.
+     * a render cancelled while waiting stops waiting and throws a CancellationException, leaving the
+     * computation to finish in the background
+     */
+    private void awaitWarmLevel(int charsInRow, double cellAspect, ConversionProgress progress){
+        Map<Integer, FutureTask<Void>> levels = warmLevels.get(cellAspect);
+        FutureTask<Void> level = levels == null ? null : levels.get(charsInRow);
+        if(level == null || level.cancel(false)){
+            return;
+        }
+        try{
+            while(true){
+                if(progress.isCancelled()){
+                    throw new CancellationException();
+                }
+                try{
+                    level.get(WARM_LEVEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return;
+                }catch(TimeoutException e){
+                    // still computing, check the render wasn't cancelled in the meantime
+                }
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(ExecutionException e){
+            Logger.getGlobal().warning("Failed to pre-compute resolution " + charsInRow + ": " + e.getCause());
+        }
+    }
+    
     /*
      * changes the resolution of the ascii image. validates that we are within the range of min/max
      * resolution possible.
@@ -219,6 +414,7 @@ public class Shell {
                     System.out.println(RES_UP_ERROR_MESSAGE);
                 }else{
                     charsInRow *= RES_CHANGE_MULT_FACTOR;
+                    cancelRender();
                     System.out.println(String.format(RESOLUTION_CHANGE_MESSAGE, charsInRow));
                 }
                 break;
@@ -227,6 +423,7 @@ public class Shell {
                     System.out.println(RES_DOWN_ERROR_MESSAGE);
                 }else{
                     charsInRow /= RES_CHANGE_MULT_FACTOR;
+                    cancelRender();
                     System.out.println(String.format(RESOLUTION_CHANGE_MESSAGE, charsInRow));
                 }
                 break;
@@ -235,20 +432,168 @@ public class Shell {
         }
     }
     
+    /*
+     * loads the glyphs rendered in previous runs, if a snapshot file was configured and exists
+     */
+    private void loadGlyphSnapshot(){
+        String snapshot = System.getProperty(GLYPH_SNAPSHOT_PROPERTY);
+        if(snapshot == null || !Files.exists(Path.of(snapshot))){
+            return;
+        }
+        try{
+            GlyphAtlas.getShared().loadSnapshot(Path.of(snapshot));
+        }catch(IOException e){
+            Logger.getGlobal().severe(String.format(GLYPH_SNAPSHOT_ERROR, "load", snapshot));
+        }
+    }
+    
+    /*
+     * saves the rendered glyphs for the next runs, if a snapshot file was configured
+     */
+    private void saveGlyphSnapshot(){
+        String snapshot = System.getProperty(GLYPH_SNAPSHOT_PROPERTY);
+        if(snapshot == null){
+            return;
+        }
+        try{
+            GlyphAtlas.getShared().saveSnapshot(Path.of(snapshot));
+        }catch(IOException e){
+            Logger.getGlobal().severe(String.format(GLYPH_SNAPSHOT_ERROR, "save", snapshot));
+        }
+    }
+    
     /*
      * rendering the current image with the current set of chars and current resolution to the console of
-     * html file
+     * html file. the render runs in the background on a snapshot of the current settings, superseding the
+     * render in progress if there is one, so the prompt stays responsive
      */
     private void render(){
-        Character[] setAsArray = new Character[charSet.size()];
-        char[][] outputImage = charMatcher.chooseChars(charsInRow, charSet.toArray(setAsArray));
-        if(outputImage == null || outputImage.length == 0){
-            return;
+        cancelRender();
+        ConversionProgress progress = new ConversionProgress(new ProgressReporter());
+        renderProgress = progress;
+        renderFuture = renderer.submit(new RenderTask(progress));
+    }
+    
+    /*
+     * cancels the render in progress, which stops before its next row and outputs nothing.
+     * returns whether there was a render in progress to cancel
+     */
+    private boolean cancelRender(){
+        if(renderFuture == null || renderFuture.isDone()){
+            return false;
         }
-        if(isConsole){
-            consoleOutput.output(outputImage);
-        }else{
-            htmlOutput.output(outputImage);
+        renderProgress.cancel();
+        renderFuture = null;
+        return true;
+    }
+    
+    /*
+     * lets the last render requested finish before the application exits
+     */
+    private void finishRenders(){
+        renderer.shutdown();
+        try{
+            renderer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /*
+     * a single render, with the settings the Shell had when it was requested. the output isn't
+     * interrupted once started, so a cancelled render never leaves a partially written file behind
+     */
+    private class RenderTask implements Runnable {
+        private final ConversionProgress progress;
+        private final int charsInRow = Shell.this.charsInRow;
+        private final Character[] charSet = Shell.this.charSet.toArray(new Character[0]);
+        private final boolean isConsole = Shell.this.isConsole;
+        private final boolean isColored = Shell.this.isColored;
+        private final boolean isShapeMatching = Shell.this.isShapeMatching;
+        private final boolean isDithering = Shell.this.isDithering;
+        private final boolean isRedrawing = Shell.this.isRedrawing;
+        
+        RenderTask(ConversionProgress progress){
+            this.progress = progress;
+        }
+        
+        @Override
+        public void run(){
+            if(progress.isCancelled()){
+                return;
+            }
+            try{
+                render();
+            }catch(CancellationException e){
+                // superseded or cancelled, nothing is output
+            }catch(RuntimeException e){
+                Logger.getGlobal().severe("Render failed: " + e);
+            }
+        }
+        
+        private void render(){
+            RenderEvent event = new RenderEvent();
+            event.begin();
+            // the shape matcher compares square glyphs, so only the brightness matcher draws in console cells
+            boolean isConsoleCells = isConsole && !isShapeMatching;
+            double cellAspect = isConsoleCells ? consoleCellAspect : SQUARE_CELL;
+            if(!isShapeMatching){
+                awaitWarmLevel(charsInRow, cellAspect, progress);
+            }
+            charMatcher.setDithering(isDithering);
+            // the colors are computed first, so the brightness is computed in the same pass
+            int[][] colors = isColored ? charMatcher.chooseColors(charsInRow, cellAspect, progress) : null;
+            char[][] outputImage = isShapeMatching ?
+                    shapeMatcher.chooseChars(charsInRow, charSet, progress) :
+                    charMatcher.chooseChars(charsInRow, cellAspect, charSet, progress);
+            if(outputImage == null || outputImage.length == 0 || progress.isCancelled()){
+                return;
+            }
+            consoleOutput.setRedrawing(isRedrawing);
+            consoleCellOutput.setRedrawing(isRedrawing);
+            AsciiOutput output = isConsoleCells ? consoleCellOutput : isConsole ? consoleOutput : htmlOutput;
+            long startNanos = System.nanoTime();
+            if(isColored){
+                output.output(outputImage, colors);
+            }else{
+                output.output(outputImage);
+            }
+            long outputNanos = System.nanoTime() - startNanos;
+            ConversionStats conversion = isShapeMatching ? shapeMatcher.getLastStats() :
+                    charMatcher.getLastStats();
+            renderStats.record(charsInRow, conversion, outputNanos, output.getBytesWritten(), event);
+        }
+    }
+    
+    /*
+     * prints the progress of a long render every PROGRESS_STEP percent of the rows of each of its passes.
+     * a pass starts only once the previous one completed, adding its rows to the total, so a grown total
+     * means a new pass, whose progress is counted from the rows completed before it
+     */
+    private static class ProgressReporter implements ConversionProgress.Listener {
+        private final long startNanos = System.nanoTime();
+        private int pass;
+        private int passFromRows;
+        private int passToRows;
+        private int reportedStep;
+        
+        @Override
+        public synchronized void onRowsCompleted(int completedRows, int totalRows){
+            if(totalRows != passToRows){
+                pass++;
+                passFromRows = passToRows;
+                passToRows = totalRows;
+                reportedStep = 0;
+            }
+            int passCompleted = completedRows - passFromRows;
+            int passTotal = passToRows - passFromRows;
+            int step = (int)(100L * passCompleted / passTotal) / PROGRESS_STEP;
+            if(step <= reportedStep || System.nanoTime() - startNanos < PROGRESS_DELAY_NANOS){
+                return;
+            }
+            reportedStep = step;
+            System.out.println(String.format(RENDER_PROGRESS_MESSAGE, pass, step * PROGRESS_STEP,
+                    passCompleted, passTotal));
         }
     }
 }
@@ -0,0 +1,50 @@
+package ascii_art;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package ascii_art.
+ * Creates the executors of the application's long running modes.
+ * @author eran_turgeman
+ */
+class ThreadPools {
+    private static final String VIRTUAL_EXECUTOR_FACTORY = "newVirtualThreadPerTaskExecutor";
+
+    /*
+     * no instances
+     */
+    private ThreadPools() {
+    }
+
+    /**
+     * Creates an executor for blocking I/O tasks, running every task on its own virtual thread
+     * when the runtime supports virtual threads, and on a cached pool of daemon threads otherwise.
+     * @return the executor
+     */
+    static ExecutorService newIoExecutor() {
+        try {
+            Method factory = Executors.class.getMethod(VIRTUAL_EXECUTOR_FACTORY);
+            return (ExecutorService)factory.invoke(null);
+        } catch(ReflectiveOperationException e) {
+            Logger.getGlobal().fine("Virtual threads aren't available, using platform threads for I/O");
+            return Executors.newCachedThreadPool(daemonThreads(Thread.NORM_PRIORITY));
+        }
+    }
+
+    /**
+     * @param priority the priority of the created threads
+     * @return a factory of daemon threads of the given priority
+     */
+    static ThreadFactory daemonThreads(int priority) {
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+}
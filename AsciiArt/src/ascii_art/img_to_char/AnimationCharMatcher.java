@@ -0,0 +1,118 @@
+package ascii_art.img_to_char;
+
+import image.Animation;
+import image.Image;
+
+/**
+ * Converts the frames of an animation to Ascii pictures, using the same brightness matching as
+ * BrightnessImgCharMatcher. Conversion is incremental: a tile none of whose pixels changed since the
+ * previous frame keeps its previous char without computing its brightness again, so the cost of a frame
+ * depends on how much of the picture moves rather than on its size.
+ * @see BrightnessImgCharMatcher
+ * @author eran_turgeman
+ */
+public class AnimationCharMatcher {
+    //========================================= private fields =========================================
+    private final Animation animation;
+    private final String font;
+    private long computedTiles;
+    private long reusedTiles;
+    
+    //========================================= public functions =========================================
+    
+    /**
+     * Receives the Ascii pictures of the frames, in order
+     */
+    public interface FrameListener {
+        /**
+         * @param chars the Ascii picture of the frame
+         * @param delayMillis how long the frame should be shown, in milliseconds
+         */
+        void onFrame(char[][] chars, int delayMillis);
+    }
+    
+    /**
+     * Constructor
+     * @param animation the animation to convert
+     * @param font the requested font to the ascii chars conversion
+     */
+    public AnimationCharMatcher(Animation animation, String font){
+        this.animation = animation;
+        this.font = font;
+    }
+    
+    /**
+     * converts every frame of the animation to an array of chars, handing each one to the listener as soon
+     * as it is ready
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param charSet the set of chars we want to draw the animation with
+     * @param listener receives the frames' pictures
+     */
+    public void chooseChars(int numCharsInRow, Character[] charSet, FrameListener listener){
+        if(charSet == null || charSet.length == 0 || numCharsInRow <= 0){
+            return;
+        }
+        CharLookupTable charLookup = CharLookupTable.of(charSet, font);
+        char[][] previous = null;
+        for(Animation.Frame frame: animation){
+            Image image = frame.getImage();
+            int pixels = Math.max(1, image.getWidth() / numCharsInRow);
+            char[][] asciiArt = new char[image.getHeight() / pixels][image.getWidth() / pixels];
+            // only the rows of tiles overlapping the changed rows are looked at, the rest keep their chars
+            int changedFrom = 0, changedTo = asciiArt.length;
+            if(previous != null){
+                changedFrom = Math.min(asciiArt.length, frame.getChangedTop() / pixels);
+                changedTo = Math.min(asciiArt.length, (frame.getChangedBottom() + pixels - 1) / pixels);
+            }
+            for(int i = 0; i < asciiArt.length; i++){
+                if(i < changedFrom || i >= changedTo){
+                    asciiArt[i] = previous[i].clone();
+                    reusedTiles += asciiArt[i].length;
+                    continue;
+                }
+                for(int j = 0; j < asciiArt[i].length; j++){
+                    int x = j * pixels, y = i * pixels;
+                    if(previous != null && !frame.isChanged(x, y, pixels, pixels)){
+                        asciiArt[i][j] = previous[i][j];
+                        reusedTiles++;
+                    }else{
+                        asciiArt[i][j] = charLookup.closestChar(getTileBrightness(image, x, y, pixels));
+                        computedTiles++;
+                    }
+                }
+            }
+            listener.onFrame(asciiArt, frame.getDelayMillis());
+            previous = asciiArt;
+        }
+    }
+    
+    /**
+     * @return the number of tiles whose brightness was computed
+     */
+    public long getComputedTiles(){
+        return computedTiles;
+    }
+    
+    /**
+     * @return the number of tiles which kept the char of the previous frame
+     */
+    public long getReusedTiles(){
+        return reusedTiles;
+    }
+    
+    //========================================= private functions =========================================
+    /*
+     * the average brightness of a square tile of a frame
+     */
+    private static double getTileBrightness(Image image, int startX, int startY, int pixels){
+        int[] row = new int[pixels];
+        double sum = 0;
+        for(int y = startY; y < startY + pixels; y++){
+            image.getRowArgb(y, startX, pixels, row, 0);
+            for(int x = 0; x < pixels; x++){
+                sum += BrightnessImgCharMatcher.getGreyNormalized(row[x]);
+            }
+        }
+        return sum / ((double)pixels * pixels);
+    }
+}
@@ -1,11 +1,12 @@
 package ascii_art.img_to_char;
 
 
+import image.BrightnessPyramid;
 import image.Image;
+import image.SummedAreaTable;
 
-import java.awt.*;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * responsible to perform a conversion of an Image object to Ascii picture using brightness matching between
@@ -19,13 +20,26 @@ public class BrightnessImgCharMatcher {
     private static final double BLUE_CONVERSION_FACTOR = 0.0722;
     private static final double GREEN_CONVERSION_FACTOR = 0.7152;
     private static final int RGB_HIGHEST_VALUE = 255;
-    private static final int CHAR_IMAGE_SIZE = 16;
-    private static final int DUMMY_VALUE_FOR_EQUAL_MIN_MAX = 1;
+    // a summed-area table costs 8 bytes per pixel, larger images fall back to walking the tiles' pixels
+    private static final long MAX_INDEXED_PIXELS = 1L << 24;
+    private static final int DEFAULT_CACHED_TILES = 1 << 16;
+    private static final long DEFAULT_CACHED_GRID_BYTES = 64L << 20;
+    private static final double SQUARE_CELL = 1;
     
     //========================================= private fields =========================================
     private final Image image;
-    private final String font;
-    private final HashMap<Image, Double> cache = new HashMap<>();
+    private final ForkJoinPool pool;
+    // created on first use, since most images never walk their tiles
+    private volatile TileBrightnessCache cache;
+    private final CharPalette palette;
+    // the brightness and average color of every tile, by the tile size, so a charset change only remaps
+    // the tiles to chars. thread safe, so resolutions can be prepared on another thread while the image
+    // is converted
+    private final TileGridCache grids;
+    private BrightnessPyramid brightnessPyramid;
+    private SummedAreaTable brightnessTable;
+    private volatile ConversionStats lastStats;
+    private boolean isDithering;
     
     //========================================= public functions =========================================
     
@@ -35,289 +49,468 @@ public class BrightnessImgCharMatcher {
      * @param font the requested font to the ascii chars conversion
      */
     public BrightnessImgCharMatcher(Image image, String font){
+        this(image, font, null);
+    }
+    
+    /**
+     * Constructor for a matcher that converts the image in parallel. The rows of the ascii image are split
+     * into bands which are converted independently on the given pool, the result is identical to the one
+     * of a sequential conversion.
+     * @param image a king of an Image object (any class implementing Image interface)
+     * @param font the requested font to the ascii chars conversion
+     * @param pool the pool to convert on, or null to convert sequentially on the calling thread
+     */
+    public BrightnessImgCharMatcher(Image image, String font, ForkJoinPool pool){
+        this(image, font, pool, null);
+    }
+    
+    /**
+     * Constructor for a parallel matcher with a given tile cache. The cache is only used for images too
+     * large to index, whose tiles' brightness is computed by walking their pixels.
+     * @param image a king of an Image object (any class implementing Image interface)
+     * @param font the requested font to the ascii chars conversion
+     * @param pool the pool to convert on, or null to convert sequentially on the calling thread
+     * @param cache the cache of tile brightness values, or null for a default LRU cache created on first use
+     */
+    public BrightnessImgCharMatcher(Image image, String font, ForkJoinPool pool, TileBrightnessCache cache){
+        this(image, font, pool, cache, null);
+    }
+    
+    /**
+     * Constructor for a parallel matcher with given caches. The grid cache keeps the brightness and color
+     * of every tile of the resolutions converted before, and bounds the memory they take, while the tile
+     * cache is only used for images too large to index.
+     * @param image a king of an Image object (any class implementing Image interface)
+     * @param font the requested font to the ascii chars conversion
+     * @param pool the pool to convert on, or null to convert sequentially on the calling thread
+     * @param cache the cache of tile brightness values, or null for a default LRU cache created on first use
+     * @param grids the cache of the grids of every resolution, or null for a default LRU cache of 64MB
+     */
+    public BrightnessImgCharMatcher(Image image, String font, ForkJoinPool pool, TileBrightnessCache cache,
+                                    TileGridCache grids){
         this.image = image;
-        this.font = font;
+        this.pool = pool;
+        this.cache = cache;
+        this.grids = grids != null ? grids :
+                new TileGridCache(DEFAULT_CACHED_GRID_BYTES, TileBrightnessCache.Eviction.LRU);
+        this.palette = new CharPalette(font);
+    }
+    
+    /**
+     * @return the cache of tile brightness values, whose hit and miss counters can be inspected
+     */
+    public TileBrightnessCache getTileCache(){
+        TileBrightnessCache tileCache = cache;
+        if(tileCache == null){
+            synchronized(this){
+                if(cache == null){
+                    cache = new TileBrightnessCache(DEFAULT_CACHED_TILES, TileBrightnessCache.Eviction.LRU);
+                }
+                tileCache = cache;
+            }
+        }
+        return tileCache;
+    }
+    
+    /**
+     * @return the cache of the grids of every resolution, whose hit and miss counters can be inspected
+     */
+    public TileGridCache getGridCache(){
+        return grids;
+    }
+    
+    /**
+     * Sets whether the tiles' brightness is dithered into chars with error diffusion, which draws gradients
+     * with small charsets without banding. Dithering converts the tiles sequentially, even with a pool.
+     * @param isDithering true to dither, false to convert every tile to the char of the closest brightness
+     */
+    public void setDithering(boolean isDithering){
+        this.isDithering = isDithering;
+    }
+    
+    /**
+     * @return the time spent in every phase of the last conversion and what it did, or null if nothing
+     * was converted yet
+     */
+    public ConversionStats getLastStats(){
+        return lastStats;
     }
     
     /**
-     * returns an array of chars that represents a picture
+     * returns an array of chars that represents a picture. The brightness of the tiles is kept per
+     * resolution, so converting again in a resolution used before, with any charset, only maps the tiles'
+     * brightness to chars
      * @param numCharsInRow amount of chars to draw in a line
      * @param charSet the set of chars we want to draw the picture with
      * @return 2-Dim array representing a picture
      */
     public char[][] chooseChars(int numCharsInRow, Character[] charSet){
-        if(charSet == null || numCharsInRow <= 0){
+        return chooseChars(numCharsInRow, SQUARE_CELL, charSet);
+    }
+    
+    /**
+     * returns an array of chars that represents a picture, drawn with rectangular cells whose height is a
+     * given multiple of their width, such as the cells of a console's font. The brightness of every cell
+     * is read from a summed-area table, at the same cost for any cell shape
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param cellAspect the height of a cell divided by its width
+     * @param charSet the set of chars we want to draw the picture with
+     * @return 2-Dim array representing a picture
+     */
+    public char[][] chooseChars(int numCharsInRow, double cellAspect, Character[] charSet){
+        return chooseChars(numCharsInRow, cellAspect, charSet, null);
+    }
+    
+    /**
+     * returns an array of chars that represents a picture, reporting the rows it completes to a progress
+     * through which the conversion can be cancelled from another thread
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param cellAspect the height of a cell divided by its width
+     * @param charSet the set of chars we want to draw the picture with
+     * @param progress the progress of the conversion, or null if it isn't tracked
+     * @return 2-Dim array representing a picture
+     * @throws java.util.concurrent.CancellationException if the conversion is cancelled
+     */
+    public char[][] chooseChars(int numCharsInRow, double cellAspect, Character[] charSet,
+                                ConversionProgress progress){
+        if(charSet == null || numCharsInRow <= 0 || !(cellAspect > 0)){
             return null;
         }
         if(charSet.length == 0){
             return new char[0][0];
         }
         
-        double[] charsBrightness = getCharsBrightness(charSet, CHAR_IMAGE_SIZE);
-        double[] charsNormalizedBrightness = normalizeBrightness(charsBrightness);
-        CharDoublePair[] charsWithBrightness = new CharDoublePair[charSet.length];
+        long startNanos = System.nanoTime();
+        long renderedGlyphs = GlyphAtlas.getShared().getRenderedGlyphs();
+        CharLookupTable charLookup = palette.update(charSet);
+        long glyphNanos = System.nanoTime() - startNanos;
+        renderedGlyphs = GlyphAtlas.getShared().getRenderedGlyphs() - renderedGlyphs;
         
-        for(int i = 0; i < charsWithBrightness.length; i++){
-            charsWithBrightness[i] = new CharDoublePair(charSet[i], charsNormalizedBrightness[i]);
+        int cellWidth = image.getWidth() / numCharsInRow;
+        int cellHeight = getCellHeight(cellWidth, cellAspect);
+        int asciiArrRows = image.getHeight() / cellHeight;
+        int asciiArrCols = image.getWidth() / cellWidth;
+        long cacheHits = getCacheHits(), cacheMisses = getCacheMisses();
+        boolean isGridComputed = !grids.containsBrightness(gridKey(cellWidth, cellHeight));
+        startNanos = System.nanoTime();
+        float[] grid = getBrightnessGrid(cellWidth, cellHeight, asciiArrRows, asciiArrCols, pool, progress);
+        long brightnessNanos = System.nanoTime() - startNanos;
+        
+        startNanos = System.nanoTime();
+        char[][] asciiArt = convertGridToAscii(grid, asciiArrRows, asciiArrCols, charLookup, progress);
+        long matchNanos = System.nanoTime() - startNanos;
+        
+        long tiles = (long)asciiArrRows * asciiArrCols;
+        lastStats = new ConversionStats(glyphNanos, brightnessNanos, matchNanos, tiles,
+                isGridComputed ? tiles : 0, getCacheHits() - cacheHits, getCacheMisses() - cacheMisses,
+                renderedGlyphs);
+        return asciiArt;
+    }
+    
+    /**
+     * returns the average color of every tile of the picture chooseChars returns in the same resolution.
+     * The colors are computed in a single pass over the image, which also computes the tiles' brightness
+     * if it isn't known yet, so calling this before chooseChars doesn't read the image twice
+     * @param numCharsInRow amount of chars to draw in a line
+     * @return 2-Dim array of colors packed as RGB ints, in the format of Color.getRGB without the alpha
+     */
+    public int[][] chooseColors(int numCharsInRow){
+        return chooseColors(numCharsInRow, SQUARE_CELL);
+    }
+    
+    /**
+     * returns the average color of every cell of the picture chooseChars returns with the same
+     * resolution and cell aspect
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param cellAspect the height of a cell divided by its width
+     * @return 2-Dim array of colors packed as RGB ints, in the format of Color.getRGB without the alpha
+     */
+    public int[][] chooseColors(int numCharsInRow, double cellAspect){
+        return chooseColors(numCharsInRow, cellAspect, null);
+    }
+    
+    /**
+     * returns the average color of every cell, reporting the rows it completes to a progress through which
+     * the conversion can be cancelled from another thread
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param cellAspect the height of a cell divided by its width
+     * @param progress the progress of the conversion, or null if it isn't tracked
+     * @return 2-Dim array of colors packed as RGB ints, in the format of Color.getRGB without the alpha
+     * @throws java.util.concurrent.CancellationException if the conversion is cancelled
+     */
+    public int[][] chooseColors(int numCharsInRow, double cellAspect, ConversionProgress progress){
+        if(numCharsInRow <= 0 || !(cellAspect > 0)){
+            return null;
+        }
+        int cellWidth = image.getWidth() / numCharsInRow;
+        int cellHeight = getCellHeight(cellWidth, cellAspect);
+        int asciiArrRows = image.getHeight() / cellHeight;
+        int asciiArrCols = image.getWidth() / cellWidth;
+        int[] grid = grids.getColors(gridKey(cellWidth, cellHeight));
+        if(grid == null){
+            grid = fillColors(cellWidth, cellHeight, asciiArrRows, asciiArrCols, progress);
         }
-        mergeSort(charsWithBrightness, charsBrightness.length);
-        return convertImageToAscii(charsWithBrightness, numCharsInRow);
+        int[][] colors = new int[asciiArrRows][];
+        for(int i = 0; i < asciiArrRows; i++){
+            colors[i] = Arrays.copyOfRange(grid, i * asciiArrCols, (i + 1) * asciiArrCols);
+        }
+        return colors;
+    }
+    
+    /**
+     * computes the brightness of the cells of a resolution ahead of time, so converting in that resolution
+     * later only maps the cells to chars. The cells are computed on the calling thread alone, at its
+     * priority, and it's safe to prepare a resolution while the image is converted on another thread
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param cellAspect the height of a cell divided by its width
+     */
+    public void prepare(int numCharsInRow, double cellAspect){
+        if(numCharsInRow <= 0 || !(cellAspect > 0)){
+            return;
+        }
+        int cellWidth = image.getWidth() / numCharsInRow;
+        int cellHeight = getCellHeight(cellWidth, cellAspect);
+        getBrightnessGrid(cellWidth, cellHeight, image.getHeight() / cellHeight, image.getWidth() / cellWidth,
+                null, null);
     }
     
     //========================================= private functions =========================================
     /*
-     * this function gets a sorted array or pairs (char & it's normalized brightness ) with the requested
-     * amount to characters in a row and creates the actual ascii image from the Image object got in the
-     * constructor
+     * the lookups of whole grids and of single tiles that found their entry
      */
-    private char[][] convertImageToAscii(CharDoublePair[] charsWithBrightness, int numCharsInRow){
-        int pixels = image.getWidth() / numCharsInRow;
-        int asciiArrRows = image.getHeight() / pixels;
-        int asciiArrCols = image.getWidth() / pixels;
-        
-        char[][] asciiArt = new char[asciiArrRows][asciiArrCols];
-        int i = 0, j = 0;
-        
-        for(Image subImage: image.squareSubImagesOfSize(pixels)){
-            double imageAverageBrightness;
-            if(cache.containsKey(subImage)){
-                imageAverageBrightness = cache.get(subImage);
-            }else{
-                imageAverageBrightness = getImageAverageBrightness(subImage);
-                cache.put(subImage, imageAverageBrightness);
-            }
-            
-            char representative = findClosestBrightnessChar(imageAverageBrightness, charsWithBrightness);
-            asciiArt[i][j++] = representative;
-            if(j == asciiArrCols){
-                j = 0;
-                i++;
-            }
-        }
-        return asciiArt;
+    private long getCacheHits(){
+        TileBrightnessCache tileCache = cache;
+        return grids.getHits() + (tileCache == null ? 0 : tileCache.getHits());
+    }
+    
+    private long getCacheMisses(){
+        TileBrightnessCache tileCache = cache;
+        return grids.getMisses() + (tileCache == null ? 0 : tileCache.getMisses());
     }
     
     /*
-     * given a brightness value looks for a char in the pairs array which it's brightness value is the
-     * closest to the given value and return this char.
-     * This method is based on binary search with adjustment to find the closest value to the given brightness
+     * the height of cells of the given width and aspect, at least a pixel and at most the image's height
      */
-    private char findClosestBrightnessChar(double imageAverageBrightness,
-                                           CharDoublePair[] charsWithBrightness) {
-        int arrayLength = charsWithBrightness.length;
-        if(imageAverageBrightness <= charsWithBrightness[0].getValue()){
-            return charsWithBrightness[0].getKey();
-        }
-        if(charsWithBrightness[arrayLength - 1].getValue() <= imageAverageBrightness){
-            return charsWithBrightness[arrayLength - 1].getKey();
-        }
-        
-        int i = 0, mid = 0;
-        int j = arrayLength;
-        
-        while(i < j){
-            mid = (i + j) / 2;
-            if(charsWithBrightness[mid].getValue() == imageAverageBrightness){
-                return charsWithBrightness[mid].getKey();
-            }
-            
-            if(charsWithBrightness[mid].getValue() > imageAverageBrightness){
-                if(mid > 0 && charsWithBrightness[mid - 1].getValue() < imageAverageBrightness){
-                    return findClosestToTarget(mid, mid - 1, imageAverageBrightness, charsWithBrightness);
+    private int getCellHeight(int cellWidth, double cellAspect){
+        return (int)Math.max(1, Math.min(image.getHeight(), Math.round(cellWidth * cellAspect)));
+    }
+    
+    /*
+     * the key of the grids of cells of a given size
+     */
+    private static long gridKey(int cellWidth, int cellHeight){
+        return (long)cellWidth << Integer.SIZE | cellHeight;
+    }
+    
+    /*
+     * computes the average color of all the tiles of the given size, summing the channels of every row of
+     * tiles pixel row by pixel row. the brightness of the tiles, a weighted sum of the same channel sums, is
+     * kept too if it isn't known yet
+     */
+    private int[] fillColors(int cellWidth, int cellHeight, int rows, int cols, ConversionProgress progress){
+        long key = gridKey(cellWidth, cellHeight);
+        int[] colorGrid = new int[rows * cols];
+        float[] brightnessGrid = grids.containsBrightness(key) ? null : new float[rows * cols];
+        double pixelsInTile = (double)cellWidth * cellHeight;
+        RowBands.RowRange fill = (fromRow, toRow) -> {
+            long[] sums = new long[cols * 3];
+            int[] row = new int[cols * cellWidth];
+            for(int i = fromRow; i < toRow; i++){
+                Arrays.fill(sums, 0);
+                for(int y = i * cellHeight; y < (i + 1) * cellHeight; y++){
+                    image.getRowArgb(y, 0, row.length, row, 0);
+                    for(int x = 0; x < row.length; x++){
+                        int tile = (x / cellWidth) * 3;
+                        sums[tile] += (row[x] >> 16) & 0xFF;
+                        sums[tile + 1] += (row[x] >> 8) & 0xFF;
+                        sums[tile + 2] += row[x] & 0xFF;
+                    }
                 }
-                j = mid;
-            }
-            else {
-                if(mid < arrayLength - 1 && charsWithBrightness[mid + 1].getValue() > imageAverageBrightness){
-                    return findClosestToTarget(mid, mid + 1, imageAverageBrightness, charsWithBrightness);
+                for(int j = 0; j < cols; j++){
+                    long red = sums[j * 3], green = sums[j * 3 + 1], blue = sums[j * 3 + 2];
+                    colorGrid[i * cols + j] = (int)Math.round(red / pixelsInTile) << 16 |
+                                              (int)Math.round(green / pixelsInTile) << 8 |
+                                              (int)Math.round(blue / pixelsInTile);
+                    if(brightnessGrid != null){
+                        brightnessGrid[i * cols + j] = (float)((red * RED_CONVERSION_FACTOR +
+                                green * GREEN_CONVERSION_FACTOR + blue * BLUE_CONVERSION_FACTOR) /
+                                (RGB_HIGHEST_VALUE * pixelsInTile));
+                    }
                 }
-                i = mid + 1;
             }
+        };
+        RowBands.forEach(image.isStreamed() ? null : pool, rows, progress, fill);
+        grids.putColors(key, colorGrid);
+        if(brightnessGrid != null){
+            grids.putBrightnessIfAbsent(key, brightnessGrid);
         }
-        return charsWithBrightness[mid].getKey();
+        return colorGrid;
     }
     
     /*
-     * helper function to findClosestBrightnessChar
+     * this function gets the brightness of the tiles and a lookup table from brightness to the charset's
+     * chars and creates the actual ascii image
      */
-    private char findClosestToTarget(int firstInd, int secondInd, double targetBrightness,
-                                     CharDoublePair[] charsWithBrightness) {
-        if(Math.abs(charsWithBrightness[firstInd].getValue() - targetBrightness) <
-                Math.abs(charsWithBrightness[secondInd].getValue() - targetBrightness)){
-            return charsWithBrightness[firstInd].getKey();
+    private char[][] convertGridToAscii(float[] grid, int asciiArrRows, int asciiArrCols,
+                                        CharLookupTable charLookup, ConversionProgress progress){
+        char[][] asciiArt = new char[asciiArrRows][asciiArrCols];
+        if(isDithering){
+            ErrorDiffusion.dither(grid, asciiArrCols, charLookup, asciiArt, progress);
+            return asciiArt;
         }
-        return charsWithBrightness[secondInd].getKey();
+        RowBands.forEach(pool, asciiArrRows, progress, (fromRow, toRow) -> {
+            for(int i = fromRow; i < toRow; i++){
+                for(int j = 0; j < asciiArrCols; j++){
+                    asciiArt[i][j] = charLookup.closestChar(grid[i * asciiArrCols + j]);
+                }
+            }
+        });
+        return asciiArt;
     }
     
     /*
-     * given an Image object- calculate it's average brightness after converting the pixels to grey pixels
+     * returns the brightness of all the tiles of the given size, row after row, computing it only the first
+     * time the size is requested. the grid is computed on the given pool, or on the calling thread if null.
+     * a cancelled computation keeps nothing, so a grid is either complete or absent
      */
-    private double getImageAverageBrightness(Image image){
-        long pixelsAmount = 0;
-        double pixelsGreyNormalizedSum = 0;
-        for(Color pixel: image.pixels()){
-            pixelsAmount++;
-            pixelsGreyNormalizedSum += (pixel.getRed() * RED_CONVERSION_FACTOR +
-                    pixel.getBlue() * BLUE_CONVERSION_FACTOR +
-                    pixel.getGreen() * GREEN_CONVERSION_FACTOR) / RGB_HIGHEST_VALUE;
+    private float[] getBrightnessGrid(int cellWidth, int cellHeight, int rows, int cols, ForkJoinPool pool,
+                                      ConversionProgress progress){
+        long key = gridKey(cellWidth, cellHeight);
+        float[] grid = grids.getBrightness(key);
+        if(grid != null){
+            return grid;
         }
-        return pixelsGreyNormalizedSum / pixelsAmount;
+        float[] newGrid = new float[rows * cols];
+        if(image.isStreamed()){
+            fillStreamed(newGrid, rows, cols, cellWidth, cellHeight, progress);
+        }else{
+            TileBrightness tileBrightness = cellWidth == cellHeight ? getTileBrightness(cellWidth) :
+                    getCellBrightness(cellWidth, cellHeight);
+            RowBands.forEach(pool, rows, progress, (fromRow, toRow) -> {
+                for(int i = fromRow; i < toRow; i++){
+                    for(int j = 0; j < cols; j++){
+                        newGrid[i * cols + j] = (float)tileBrightness.of(j, i);
+                    }
+                }
+            });
+        }
+        // a grid prepared concurrently is kept, so every conversion of the resolution sees the same grid
+        return grids.putBrightnessIfAbsent(key, newGrid);
     }
     
     /*
-     * given an array of doubles representing chars brightnesses- normalizing those values to be in range
-     * [0,1] according to a given normalization formula
+     * returns the source of the brightness of tiles of the given size.
+     * power of two tile sizes (all the resolutions the Shell offers) are read from the brightness pyramid,
+     * any other size is read from the summed-area table, unless the image is too large to index in which
+     * case the tiles' pixels are walked and cached.
+     * the indices are built here, on the calling thread, so the returned source is safe to share between
+     * threads. they're built under the matcher's lock, once, even if resolutions are computed concurrently
      */
-    private double[] normalizeBrightness(double[] charsBrightness) {
-        double maxValue = charsBrightness[0];
-        double minValue = charsBrightness[0];
-        
-        for(double val:charsBrightness){
-            if(val > maxValue){
-                maxValue = val;
-            }
-            if(val < minValue){
-                minValue = val;
-            }
+    private synchronized TileBrightness getTileBrightness(int pixels){
+        if(brightnessPyramid == null){
+            brightnessPyramid = BrightnessPyramid.of(image);
+        }
+        BrightnessPyramid pyramid = brightnessPyramid;
+        int level = pyramid.levelOfTileSize(pixels);
+        if(level != -1){
+            return (col, row) -> pyramid.tileBrightness(level, col, row);
         }
         
-        double[] result = new double[charsBrightness.length];
-        if(maxValue == minValue){
-            Arrays.fill(result, DUMMY_VALUE_FOR_EQUAL_MIN_MAX);
-            return result;
+        if((long)image.getWidth() * image.getHeight() > MAX_INDEXED_PIXELS){
+            TileBrightnessCache tileCache = getTileCache();
+            return (col, row) -> getCachedTileBrightness(tileCache, col * pixels, row * pixels, pixels);
         }
-        for(int i = 0; i < charsBrightness.length; i++){
-            result[i] = (charsBrightness[i] - minValue) / (maxValue - minValue);
+        if(brightnessTable == null){
+            brightnessTable = SummedAreaTable.of(image);
         }
-        return result;
+        SummedAreaTable table = brightnessTable;
+        return (col, row) -> table.averageBrightness(col * pixels, row * pixels, pixels, pixels);
     }
     
     /*
-     * given an array of chars, requested font and requested amount of chars per row- calculates and
-     * returns an array of each char's brightness according to a given formula
+     * returns the source of the brightness of rectangular cells, read from the summed-area table in constant
+     * time per cell, or walked if the image is too large to index
      */
-    private double[] getCharsBrightness(Character[] charSet, int numOfCharsInRow){
-        double[] result = new double[charSet.length];
-        double totalPixels = numOfCharsInRow * numOfCharsInRow;
-    
-        for(int i = 0; i < charSet.length; i++){
-            int whitePixels = countWhitePixels(charSet[i], numOfCharsInRow);
-            result[i] = (double)whitePixels / totalPixels;
+    private synchronized TileBrightness getCellBrightness(int cellWidth, int cellHeight){
+        if((long)image.getWidth() * image.getHeight() > MAX_INDEXED_PIXELS){
+            return (col, row) -> getRegionAverageBrightness(col * cellWidth, row * cellHeight, cellWidth,
+                    cellHeight);
+        }
+        if(brightnessTable == null){
+            brightnessTable = SummedAreaTable.of(image);
         }
-        return result;
+        SummedAreaTable table = brightnessTable;
+        return (col, row) -> table.averageBrightness(col * cellWidth, row * cellHeight, cellWidth, cellHeight);
     }
     
     /*
-     * helper function that counts the amount of white pixels in an ascii representation of a character,
-     * according to a given font
+     * fills the brightness grid of a streamed image, reading the image once from top to bottom.
+     * the brightness of a row of tiles is accumulated pixel row by pixel row, so apart from the grid only
+     * one row of tile sums is kept, and the image itself only needs to hold the rows being read
      */
-    private int countWhitePixels(Character character, int numOfCharInRow) {
-        boolean[][] charImg = CharRenderer.getImg(character, numOfCharInRow, font);
-        int counter = 0;
-        
-        for(boolean[] row: charImg){
-            for(boolean cell: row){
-                if(cell){
-                    counter++;
+    private void fillStreamed(float[] grid, int rows, int cols, int cellWidth, int cellHeight,
+                              ConversionProgress progress){
+        double[] tileSums = new double[cols];
+        int[] row = new int[cols * cellWidth];
+        double pixelsInTile = (double)cellWidth * cellHeight;
+        RowBands.forEach(null, rows, progress, (fromRow, toRow) -> {
+            for(int i = fromRow; i < toRow; i++){
+                Arrays.fill(tileSums, 0);
+                for(int y = i * cellHeight; y < (i + 1) * cellHeight; y++){
+                    image.getRowArgb(y, 0, row.length, row, 0);
+                    for(int x = 0; x < row.length; x++){
+                        tileSums[x / cellWidth] += getGreyNormalized(row[x]);
+                    }
+                }
+                for(int j = 0; j < cols; j++){
+                    grid[i * cols + j] = (float)(tileSums[j] / pixelsInTile);
                 }
             }
-        }
-        return counter;
+        });
     }
     
     /*
-     * merge sort algorithm
+     * returns the brightness of a square tile of the image, walking its pixels only if it isn't cached yet
      */
-    private void mergeSort(CharDoublePair[] charsWithBrightness, int arrayLength){
-        if(arrayLength < 2){
-            return;
+    private double getCachedTileBrightness(TileBrightnessCache tileCache, int x, int y, int pixels){
+        long key = TileBrightnessCache.key(x, y, pixels);
+        float brightness = tileCache.get(key);
+        if(Float.isNaN(brightness)){
+            brightness = (float)getRegionAverageBrightness(x, y, pixels, pixels);
+            tileCache.put(key, brightness);
         }
-        int mid = arrayLength / 2;
-        CharDoublePair[] left = new CharDoublePair[mid];
-        CharDoublePair[] right = new CharDoublePair[arrayLength - mid];
-
-        System.arraycopy(charsWithBrightness, 0, left, 0, mid);
-
-        for(int i = mid; i < arrayLength; i++){
-            right[i - mid] = charsWithBrightness[i];
-        }
-        mergeSort(left, mid);
-        mergeSort(right, arrayLength - mid);
-        merge(charsWithBrightness, left, right, mid, arrayLength - mid);
+        return brightness;
     }
     
     /*
-     * merge algorithm - helper for mergeSort function
+     * given a region of the image- calculate it's average brightness after converting the pixels to grey
+     * pixels
      */
-    private void merge(CharDoublePair[] fullArray, CharDoublePair[] leftArray, CharDoublePair[] rightArray,
-                       int leftLength, int rightLength){
-        int i = 0, j = 0, k = 0;
-        while(i < leftLength && j < rightLength){
-            if(leftArray[i].getValue() <= rightArray[j].getValue()){
-                fullArray[k++] = leftArray[i++];
-            }else{
-                fullArray[k++] = rightArray[j++];
+    private double getRegionAverageBrightness(int startX, int startY, int width, int height){
+        int[] row = new int[width];
+        double pixelsGreyNormalizedSum = 0;
+        for(int y = startY; y < startY + height; y++){
+            image.getRowArgb(y, startX, width, row, 0);
+            for(int x = 0; x < width; x++){
+                pixelsGreyNormalizedSum += getGreyNormalized(row[x]);
             }
         }
-        while(i < leftLength) {
-            fullArray[k++] = leftArray[i++];
-        }
-        while(j < rightLength){
-            fullArray[k++] = rightArray[j++];
-        }
+        return pixelsGreyNormalizedSum / ((long)width * height);
     }
     
     /*
-     * helper class used to enable binding a character with its brightness so the work with the characters
-     * and their brightnesses will be easier and more elegant.
-     * Notice: I know a better implementation will be a generic class (and even better- using sorted
-     * hashmap, but it is not allowed) but for the sake of this part I chose to implement it like that (I
-     * saw that in the second part of the ex we can use Collections so this class might not be needed)
+     * converts a packed ARGB pixel to grey, normalized to the range [0,1]
      */
-    private static class CharDoublePair implements Comparable<CharDoublePair>{
-        private final Character key;
-        private final double value;
-    
-        /*
-         * Constructor
-         * @param c a character
-         * @param val a double value
-         */
-        public CharDoublePair(Character c, double val){
-            this.key = c;
-            this.value = val;
-        }
-    
-        /*
-         * Getter for the key
-         * @return the pair's key
-         */
-        public Character getKey() {
-            return key;
-        }
-    
-        /*
-         * Getter for the value
-         * @return the pair's value
-         */
-        public double getValue() {
-            return value;
-        }
+    static double getGreyNormalized(int pixel){
+        return (((pixel >> 16) & 0xFF) * RED_CONVERSION_FACTOR +
+                (pixel & 0xFF) * BLUE_CONVERSION_FACTOR +
+                ((pixel >> 8) & 0xFF) * GREEN_CONVERSION_FACTOR) / RGB_HIGHEST_VALUE;
+    }
     
-        /*
-         * an override to the compare function for this class to enable later usage in existing sort functions
-         * @param other the pair to compare to
-         * @return an int value represents which pair is smaller than the other
-         */
-        @Override
-        public int compareTo(CharDoublePair other) {
-            double comparisonResult = this.value - other.value;
-            if(comparisonResult < 0){
-                return -1;
-            }else if(comparisonResult > 0){
-                return 1;
-            }
-            return 0;
-        }
+    /*
+     * the average brightness of the tile at a given column and row of the ascii image
+     */
+    private interface TileBrightness {
+        double of(int col, int row);
     }
 }
@@ -0,0 +1,152 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Maps a brightness to the char of a charset with the closest brightness in constant time.
+ * The range [0,1] is quantised into buckets, and every bucket holds the char closest to its
+ * center, so a lookup is a multiply and an array load.
+ * @author eran_turgeman
+ */
+class CharLookupTable {
+    private static final int BUCKETS = 4096;
+    private static final int CHAR_IMAGE_SIZE = 16;
+    static final int DUMMY_VALUE_FOR_EQUAL_MIN_MAX = 1;
+
+    private final char[] chars;
+    private final double[] brightness;
+    private final char[] table = new char[BUCKETS];
+    // the normalized brightness of the char of every bucket
+    private final double[] tableBrightness = new double[BUCKETS];
+
+    /**
+     * Compiles a charset, measuring the brightness of its chars as rendered in a given font
+     * @param charSet the chars to draw pictures with
+     * @param font the font the chars are drawn in
+     * @return the lookup table of the charset
+     */
+    static CharLookupTable of(Character[] charSet, String font) {
+        char[] chars = new char[charSet.length];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = charSet[i];
+        }
+        return new CharLookupTable(chars, normalizeBrightness(getCharsBrightness(chars, font)));
+    }
+
+    /**
+     * Constructor
+     * @param chars the chars of the charset
+     * @param brightness the normalized brightness of every char, in the same order as the chars
+     */
+    CharLookupTable(char[] chars, double[] brightness) {
+        this.chars = chars.clone();
+        this.brightness = brightness.clone();
+        sortByBrightness(this.chars, this.brightness);
+
+        int closest = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            double center = (bucket + 0.5) / BUCKETS;
+            while(closest < this.brightness.length - 1 &&
+                  Math.abs(this.brightness[closest + 1] - center) <= Math.abs(this.brightness[closest] - center)) {
+                closest++;
+            }
+            //of several chars with the same brightness, always pick the first one
+            int first = closest;
+            while(first > 0 && this.brightness[first - 1] == this.brightness[closest]) {
+                first--;
+            }
+            table[bucket] = this.chars[first];
+            tableBrightness[bucket] = this.brightness[first];
+        }
+    }
+
+    /**
+     * @param brightness a brightness in the range [0,1], values outside the range are clamped
+     * @return the char whose brightness is the closest to the given one
+     */
+    char closestChar(double brightness) {
+        return table[bucketOf(brightness)];
+    }
+
+    /**
+     * @param brightness a brightness in the range [0,1], values outside the range are clamped
+     * @return the normalized brightness of the char closestChar returns for the given brightness
+     */
+    double closestCharBrightness(double brightness) {
+        return tableBrightness[bucketOf(brightness)];
+    }
+
+    private static int bucketOf(double brightness) {
+        int bucket = (int)(brightness * BUCKETS);
+        return Math.min(BUCKETS - 1, Math.max(0, bucket));
+    }
+
+    /*
+     * given an array of doubles representing chars brightnesses- normalizing those values to be in range
+     * [0,1] according to a given normalization formula
+     */
+    private static double[] normalizeBrightness(double[] charsBrightness) {
+        double maxValue = charsBrightness[0];
+        double minValue = charsBrightness[0];
+
+        for(double val: charsBrightness) {
+            if(val > maxValue) {
+                maxValue = val;
+            }
+            if(val < minValue) {
+                minValue = val;
+            }
+        }
+
+        double[] result = new double[charsBrightness.length];
+        if(maxValue == minValue) {
+            Arrays.fill(result, DUMMY_VALUE_FOR_EQUAL_MIN_MAX);
+            return result;
+        }
+        for(int i = 0; i < charsBrightness.length; i++) {
+            result[i] = (charsBrightness[i] - minValue) / (maxValue - minValue);
+        }
+        return result;
+    }
+
+    /*
+     * given an array of chars and a font- returns an array of each char's brightness, the share of white
+     * pixels in its image. the chars are rendered once and shared through the glyph atlas
+     */
+    private static double[] getCharsBrightness(char[] chars, String font) {
+        double[] result = new double[chars.length];
+        for(int i = 0; i < chars.length; i++) {
+            result[i] = getCharBrightness(chars[i], font);
+        }
+        return result;
+    }
+
+    /**
+     * @param c a char
+     * @param font the font the char is drawn in
+     * @return the brightness of the char before normalization, the share of white pixels in its image
+     */
+    static double getCharBrightness(char c, String font) {
+        int whitePixels = GlyphAtlas.getShared().countWhitePixels(c, CHAR_IMAGE_SIZE, font);
+        return whitePixels / (double)(CHAR_IMAGE_SIZE * CHAR_IMAGE_SIZE);
+    }
+
+    /*
+     * stable insertion sort of both arrays by the brightness, charsets are at most a few dozen chars
+     */
+    private static void sortByBrightness(char[] chars, double[] brightness) {
+        for(int i = 1; i < brightness.length; i++) {
+            char c = chars[i];
+            double value = brightness[i];
+            int j = i - 1;
+            while(j >= 0 && brightness[j] > value) {
+                chars[j + 1] = chars[j];
+                brightness[j + 1] = brightness[j];
+                j--;
+            }
+            chars[j + 1] = c;
+            brightness[j + 1] = value;
+        }
+    }
+}
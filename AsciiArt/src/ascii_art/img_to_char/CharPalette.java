@@ -0,0 +1,76 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Keeps the lookup table of a charset which changes a few chars at a time. The raw brightness of every
+ * char is measured once, when it is added, and the range used to normalize the brightness is maintained
+ * incrementally, so a charset change costs in proportion to the chars added or removed.
+ * The lookup table is identical to the one CharLookupTable.of compiles for the same charset. The same chars
+ * in another order are the same charset, so its table is kept, breaking ties between chars of the same
+ * brightness by the order the table was compiled in.
+ * Safe for use by multiple threads, updates are applied one at a time.
+ * @see CharLookupTable
+ * @author eran_turgeman
+ */
+class CharPalette {
+    private final String font;
+    private final Map<Character, Double> rawBrightness = new HashMap<>();
+    // how many chars of the charset have every raw brightness, its first and last keys are the range
+    private final TreeMap<Double, Integer> brightnessCounts = new TreeMap<>();
+    private Set<Character> charSet;
+    private CharLookupTable lookupTable;
+
+    /**
+     * Constructor
+     * @param font the font the chars are drawn in
+     */
+    CharPalette(String font) {
+        this.font = font;
+    }
+
+    /**
+     * Updates the palette to a charset, measuring only the chars that were not in the previous charset.
+     * The table of the previous charset is returned as is if the charset has the same chars
+     * @param newCharSet the chars to draw pictures with, not empty
+     * @return the lookup table of the charset
+     */
+    synchronized CharLookupTable update(Character[] newCharSet) {
+        Set<Character> kept = new HashSet<>(Arrays.asList(newCharSet));
+        if(lookupTable != null && kept.equals(charSet)) {
+            return lookupTable;
+        }
+        rawBrightness.keySet().removeIf(c -> {
+            if(kept.contains(c))
+                return false;
+            brightnessCounts.merge(rawBrightness.get(c), -1, (count, delta) -> count == 1 ? null : count + delta);
+            return true;
+        });
+        for(Character c: kept) {
+            if(!rawBrightness.containsKey(c)) {
+                double brightness = CharLookupTable.getCharBrightness(c, font);
+                rawBrightness.put(c, brightness);
+                brightnessCounts.merge(brightness, 1, Integer::sum);
+            }
+        }
+
+        double minValue = brightnessCounts.firstKey();
+        double maxValue = brightnessCounts.lastKey();
+        char[] chars = new char[newCharSet.length];
+        double[] brightness = new double[newCharSet.length];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = newCharSet[i];
+            brightness[i] = maxValue == minValue ? CharLookupTable.DUMMY_VALUE_FOR_EQUAL_MIN_MAX :
+                    (rawBrightness.get(newCharSet[i]) - minValue) / (maxValue - minValue);
+        }
+        charSet = kept;
+        lookupTable = new CharLookupTable(chars, brightness);
+        return lookupTable;
+    }
+}
@@ -14,15 +14,30 @@ import java.awt.image.BufferedImage;
 public class CharRenderer {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
+    private static final int CELL_ASPECT_FONT_SIZE = 64;
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * Each character is rendered once, later calls are answered from the shared GlyphAtlas.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        return GlyphAtlas.getShared().getImg(c, pixels, fontName);
+    }
+    
+    /**
+     * The aspect of the cells a monospaced font draws its characters in, the line height divided by the
+     * advance of a character. A console draws its text in cells of this aspect, so an image drawn with
+     * square chars looks stretched there.
+     * @param fontName the name of the font
+     * @return the height of a cell divided by its width
+     */
+    public static double getCellAspect(String fontName) {
+        Graphics g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).getGraphics();
+        FontMetrics metrics = g.getFontMetrics(new Font(fontName, Font.PLAIN, CELL_ASPECT_FONT_SIZE));
+        g.dispose();
+        return (double)metrics.getHeight() / metrics.charWidth('M');
     }
     
     /**
@@ -42,7 +57,10 @@ public class CharRenderer {
         }
     }
     
-    private static boolean[][] render(char c, int pixels, String fontName) {
+    /*
+     * rasterises a character with AWT, without looking at the atlas
+     */
+    static boolean[][] render(char c, int pixels, String fontName) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixels);
         BufferedImage img = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
@@ -0,0 +1,86 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of a conversion, counted in rows of the ascii image, through which another thread can
+ * cancel the conversion. The matchers check for cancellation before every row they compute, so a
+ * cancelled conversion stops within a row and throws a CancellationException, keeping nothing it
+ * computed partially.
+ * A conversion may pass over the rows more than once, such as computing the brightness of the tiles and
+ * then mapping it to chars, every pass adds its rows to the total.
+ * @author eran_turgeman
+ */
+public class ConversionProgress {
+    /**
+     * notified whenever a row is completed, on the thread that completed it
+     */
+    public interface Listener {
+        void onRowsCompleted(int completedRows, int totalRows);
+    }
+
+    private final Listener listener;
+    private final AtomicInteger completedRows = new AtomicInteger();
+    private final AtomicInteger totalRows = new AtomicInteger();
+    private volatile boolean isCancelled;
+
+    /**
+     * Constructor
+     * @param listener notified of every completed row, or null
+     */
+    public ConversionProgress(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Cancels the conversion, which stops before its next row
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * @return whether the conversion was cancelled
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * @return the number of rows completed so far, in all the passes
+     */
+    public int getCompletedRows() {
+        return completedRows.get();
+    }
+
+    /**
+     * @return the number of rows of all the passes started so far
+     */
+    public int getTotalRows() {
+        return totalRows.get();
+    }
+
+    /*
+     * adds the rows of a starting pass to the total
+     */
+    void startPass(int rows) {
+        totalRows.addAndGet(rows);
+    }
+
+    /*
+     * throws if the conversion was cancelled, or if the converting thread was interrupted
+     */
+    void checkCancelled() {
+        if(isCancelled || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    void completeRow() {
+        int completed = completedRows.incrementAndGet();
+        if(listener != null) {
+            listener.onRowsCompleted(completed, totalRows.get());
+        }
+    }
+}
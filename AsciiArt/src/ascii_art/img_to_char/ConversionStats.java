@@ -0,0 +1,88 @@
+package ascii_art.img_to_char;
+
+/**
+ * The time spent in every phase of a conversion of an image to chars, and the work done in it.
+ * Times are measured with System.nanoTime, once per phase, so measuring doesn't slow the conversion.
+ * @see BrightnessImgCharMatcher
+ * @author eran_turgeman
+ */
+public class ConversionStats {
+    private final long glyphNanos;
+    private final long brightnessNanos;
+    private final long matchNanos;
+    private final long tiles;
+    private final long computedTiles;
+    private final long cacheHits;
+    private final long cacheMisses;
+    private final long renderedGlyphs;
+
+    ConversionStats(long glyphNanos, long brightnessNanos, long matchNanos, long tiles, long computedTiles,
+                    long cacheHits, long cacheMisses, long renderedGlyphs) {
+        this.glyphNanos = glyphNanos;
+        this.brightnessNanos = brightnessNanos;
+        this.matchNanos = matchNanos;
+        this.tiles = tiles;
+        this.computedTiles = computedTiles;
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.renderedGlyphs = renderedGlyphs;
+    }
+
+    /**
+     * @return the time spent measuring the charset's glyphs and compiling its lookup table
+     */
+    public long getGlyphNanos() {
+        return glyphNanos;
+    }
+
+    /**
+     * @return the time spent computing the brightness of the tiles, zero-ish when it was kept from
+     * an earlier conversion in the same resolution
+     */
+    public long getBrightnessNanos() {
+        return brightnessNanos;
+    }
+
+    /**
+     * @return the time spent matching the tiles' brightness to chars
+     */
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
+    /**
+     * @return the number of tiles, i.e. chars, in the picture
+     */
+    public long getTiles() {
+        return tiles;
+    }
+
+    /**
+     * @return the number of tiles whose brightness was computed rather than kept from an earlier conversion
+     */
+    public long getComputedTiles() {
+        return computedTiles;
+    }
+
+    /**
+     * @return the number of lookups of the matcher's caches that found their entry, counting a lookup of
+     * a resolution's whole grid of tiles and a lookup of a single tile alike
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return the number of lookups of the matcher's caches that didn't find their entry
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return the number of glyphs rendered for the charset, the rest were already in the glyph atlas
+     */
+    public long getRenderedGlyphs() {
+        return renderedGlyphs;
+    }
+}
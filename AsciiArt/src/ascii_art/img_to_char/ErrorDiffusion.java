@@ -0,0 +1,63 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Floyd-Steinberg dithering of a grid of tile brightness into chars. The difference between the
+ * brightness of a tile and the brightness of its char is spread to the neighbouring tiles not
+ * converted yet, so a gradient drawn with few chars alternates between them instead of breaking
+ * into bands.
+ * The grid is converted row by row, keeping only the errors of the current and the next row, so
+ * the memory used is linear in the width of the picture.
+ * @author eran_turgeman
+ */
+class ErrorDiffusion {
+    private static final float RIGHT_WEIGHT = 7 / 16f;
+    private static final float BOTTOM_LEFT_WEIGHT = 3 / 16f;
+    private static final float BOTTOM_WEIGHT = 5 / 16f;
+    private static final float BOTTOM_RIGHT_WEIGHT = 1 / 16f;
+
+    private ErrorDiffusion() {
+    }
+
+    /**
+     * Converts a brightness grid to chars with error diffusion. Every tile depends on the ones
+     * converted before it, so the grid is converted sequentially.
+     * @param grid the brightness of the tiles, row after row
+     * @param cols the number of tiles in a row
+     * @param charLookup the lookup table of the charset
+     * @param asciiArt the picture to fill, whose rows are as long as the grid's rows
+     * @param progress the progress of the conversion, or null if it isn't tracked
+     */
+    static void dither(float[] grid, int cols, CharLookupTable charLookup, char[][] asciiArt,
+                       ConversionProgress progress) {
+        if(progress != null) {
+            progress.startPass(asciiArt.length);
+        }
+        // errors[j + 1] belongs to column j, so the neighbours of the edge columns need no checks
+        float[] currentErrors = new float[cols + 2];
+        float[] nextErrors = new float[cols + 2];
+        for(int i = 0; i < asciiArt.length; i++) {
+            if(progress != null) {
+                progress.checkCancelled();
+            }
+            for(int j = 0; j < cols; j++) {
+                double brightness = grid[i * cols + j] + currentErrors[j + 1];
+                asciiArt[i][j] = charLookup.closestChar(brightness);
+                float error = (float)(brightness - charLookup.closestCharBrightness(brightness));
+                currentErrors[j + 2] += error * RIGHT_WEIGHT;
+                nextErrors[j] += error * BOTTOM_LEFT_WEIGHT;
+                nextErrors[j + 1] += error * BOTTOM_WEIGHT;
+                nextErrors[j + 2] += error * BOTTOM_RIGHT_WEIGHT;
+            }
+            float[] done = currentErrors;
+            currentErrors = nextErrors;
+            nextErrors = done;
+            Arrays.fill(nextErrors, 0);
+            if(progress != null) {
+                progress.completeRow();
+            }
+        }
+    }
+}
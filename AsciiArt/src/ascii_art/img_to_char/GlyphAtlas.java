@@ -0,0 +1,213 @@
+package ascii_art.img_to_char;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of rendered characters, keyed by font, size and character.
+ * Every glyph is rasterised once with CharRenderer and kept as a bit-packed mask, so
+ * the glyphs (and the brightness computed from them) are shared by every user of the atlas.
+ * The atlas can be saved to and loaded from a snapshot file, so later runs load the
+ * glyphs of a font instead of rendering them again.
+ * @see CharRenderer
+ * @author eran_turgeman
+ */
+public class GlyphAtlas {
+    private static final GlyphAtlas SHARED = new GlyphAtlas();
+    private static final int SNAPSHOT_MAGIC = 0x474C5948; // "GLYH"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int CHAR_BITS = 16;
+
+    // font name -> (pixels << CHAR_BITS | char) -> glyph
+    private final Map<String, Map<Integer, Glyph>> glyphs = new ConcurrentHashMap<>();
+    private final LongAdder renderedGlyphs = new LongAdder();
+
+    /**
+     * Creates an empty atlas, separate from the shared one, whose glyphs are rendered on first use
+     */
+    public GlyphAtlas() {
+    }
+
+    /**
+     * @return the atlas shared by the whole application
+     */
+    public static GlyphAtlas getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Renders a character to a square black&white image, or returns it from the atlas if it was
+     * already rendered.
+     * @param c the character to render
+     * @param pixels the width and height of the image
+     * @param fontName the font to render the character with
+     * @return the image of the character, where true cells are white
+     */
+    public boolean[][] getImg(char c, int pixels, String fontName) {
+        Glyph glyph = getGlyph(c, pixels, fontName);
+        boolean[][] img = new boolean[pixels][pixels];
+        for(int y = 0; y < pixels; y++) {
+            for(int x = 0; x < pixels; x++) {
+                img[y][x] = glyph.isWhite(y * pixels + x);
+            }
+        }
+        return img;
+    }
+
+    /**
+     * The number of white pixels in the image of a character, rendering it only if it isn't in the atlas.
+     * @param c the character
+     * @param pixels the width and height of the character's image
+     * @param fontName the font of the character
+     * @return the number of white cells in the character's image
+     */
+    public int countWhitePixels(char c, int pixels, String fontName) {
+        return getGlyph(c, pixels, fontName).whitePixels;
+    }
+
+    /**
+     * The image of a character as a bit mask, rendering it only if it isn't in the atlas.
+     * Bit y*pixels+x, counted from the lowest bit of the first word, is set if the cell (x,y) is white.
+     * @param c the character
+     * @param pixels the width and height of the character's image
+     * @param fontName the font of the character
+     * @return a copy of the character's mask, pixels*pixels bits rounded up to whole longs
+     */
+    public long[] getMask(char c, int pixels, String fontName) {
+        return getGlyph(c, pixels, fontName).mask.clone();
+    }
+
+    /**
+     * @return how many glyphs the atlas rendered so far, glyphs loaded from snapshots aren't counted
+     */
+    public long getRenderedGlyphs() {
+        return renderedGlyphs.sum();
+    }
+
+    /**
+     * Writes every glyph in the atlas to a snapshot file.
+     * @param snapshot the file to write
+     * @throws IOException if the file couldn't be written
+     */
+    public void saveSnapshot(Path snapshot) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(snapshot)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(glyphs.size());
+            for(Map.Entry<String, Map<Integer, Glyph>> font: glyphs.entrySet()) {
+                out.writeUTF(font.getKey());
+                out.writeInt(font.getValue().size());
+                for(Map.Entry<Integer, Glyph> glyph: font.getValue().entrySet()) {
+                    out.writeInt(glyph.getKey());
+                    long[] mask = glyph.getValue().mask;
+                    out.writeInt(mask.length);
+                    for(long word: mask) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the glyphs of a snapshot file, written by saveSnapshot, to the atlas. The snapshot is
+     * validated as a whole before any of its glyphs is added, so a truncated or corrupt snapshot adds
+     * nothing and its glyphs are rendered as usual.
+     * @param snapshot the file to read
+     * @throws IOException if the file couldn't be read or isn't a valid glyph snapshot
+     */
+    public void loadSnapshot(Path snapshot) throws IOException {
+        Map<String, Map<Integer, Glyph>> loaded = new HashMap<>();
+        try(DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+                throw new IOException("Not a glyph snapshot: " + snapshot);
+            int fonts = in.readInt();
+            for(int i = 0; i < fonts; i++) {
+                Map<Integer, Glyph> fontGlyphs = loaded.computeIfAbsent(in.readUTF(), name -> new HashMap<>());
+                int fontGlyphsAmount = in.readInt();
+                for(int j = 0; j < fontGlyphsAmount; j++) {
+                    int key = in.readInt();
+                    int length = in.readInt();
+                    // the length must match the size packed in the key, or the mask would be indexed out
+                    // of its bounds later
+                    int pixels = key >>> CHAR_BITS;
+                    if(pixels == 0 || length != maskWords(pixels))
+                        throw new IOException("Corrupt glyph snapshot: " + snapshot);
+                    long[] mask = new long[length];
+                    for(int k = 0; k < mask.length; k++) {
+                        mask[k] = in.readLong();
+                    }
+                    fontGlyphs.put(key, new Glyph(mask));
+                }
+            }
+        }
+        for(Map.Entry<String, Map<Integer, Glyph>> font: loaded.entrySet()) {
+            Map<Integer, Glyph> fontGlyphs = getFontGlyphs(font.getKey());
+            font.getValue().forEach(fontGlyphs::putIfAbsent);
+        }
+    }
+
+    /*
+     * returns the glyph of a character from the atlas, rendering it if it's not there yet
+     */
+    private Glyph getGlyph(char c, int pixels, String fontName) {
+        return getFontGlyphs(fontName).computeIfAbsent((pixels << CHAR_BITS) | c,
+                key -> {
+                    renderedGlyphs.increment();
+                    return Glyph.pack(CharRenderer.render(c, pixels, fontName));
+                });
+    }
+
+    /*
+     * the number of words of the mask of a glyph of the given size
+     */
+    private static int maskWords(int pixels) {
+        return (int)(((long)pixels * pixels + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    private Map<Integer, Glyph> getFontGlyphs(String fontName) {
+        return glyphs.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>());
+    }
+
+    /*
+     * a rendered character, as a row-major bit mask where set bits are white pixels
+     */
+    private static class Glyph {
+        private final long[] mask;
+        private final int whitePixels;
+
+        Glyph(long[] mask) {
+            this.mask = mask;
+            int count = 0;
+            for(long word: mask) {
+                count += Long.bitCount(word);
+            }
+            this.whitePixels = count;
+        }
+
+        static Glyph pack(boolean[][] img) {
+            int pixels = img.length;
+            long[] mask = new long[maskWords(pixels)];
+            for(int y = 0; y < pixels; y++) {
+                for(int x = 0; x < pixels; x++) {
+                    if(img[y][x]) {
+                        int bit = y * pixels + x;
+                        mask[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+                    }
+                }
+            }
+            return new Glyph(mask);
+        }
+
+        boolean isWhite(int bit) {
+            return (mask[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Runs work over the rows of an ascii image, sequentially or split into bands of rows which are run
+ * in parallel on a ForkJoinPool. Every worker gets a few bands, so uneven rows even out between workers.
+ * @author eran_turgeman
+ */
+class RowBands {
+    // how many row bands each worker of the pool gets, more bands even out the load between workers
+    private static final int BANDS_PER_WORKER = 4;
+
+    /**
+     * work over the rows [fromRow, toRow) of the ascii image
+     */
+    interface RowRange {
+        void run(int fromRow, int toRow);
+    }
+
+    private RowBands() {
+    }
+
+    /**
+     * Runs a row range over all the rows
+     * @param pool the pool to run the bands on, or null to run all the rows on the calling thread
+     * @param rows the number of rows
+     * @param rowRange the work to run
+     */
+    static void forEach(ForkJoinPool pool, int rows, RowRange rowRange) {
+        if(pool == null) {
+            rowRange.run(0, rows);
+        } else {
+            int bandRows = Math.max(1, rows / (pool.getParallelism() * BANDS_PER_WORKER));
+            pool.invoke(new RowBandTask(0, rows, bandRows, rowRange));
+        }
+    }
+
+    /**
+     * Runs a row range over all the rows as a pass of a conversion, a row at a time, checking for
+     * cancellation before every row and reporting every completed row
+     * @param pool the pool to run the bands on, or null to run all the rows on the calling thread
+     * @param rows the number of rows
+     * @param progress the progress of the conversion, or null if it isn't tracked
+     * @param rowRange the work to run
+     * @throws java.util.concurrent.CancellationException if the conversion is cancelled
+     */
+    static void forEach(ForkJoinPool pool, int rows, ConversionProgress progress, RowRange rowRange) {
+        if(progress == null) {
+            forEach(pool, rows, rowRange);
+            return;
+        }
+        progress.startPass(rows);
+        forEach(pool, rows, (fromRow, toRow) -> {
+            for(int row = fromRow; row < toRow; row++) {
+                progress.checkCancelled();
+                rowRange.run(row, row + 1);
+                progress.completeRow();
+            }
+        });
+    }
+
+    /*
+     * runs a row range over a band of rows, splitting itself in two until the band is small enough
+     */
+    private static class RowBandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int fromRow;
+        private final int toRow;
+        private final int bandRows;
+        private final transient RowRange rowRange;
+
+        RowBandTask(int fromRow, int toRow, int bandRows, RowRange rowRange) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandRows = bandRows;
+            this.rowRange = rowRange;
+        }
+
+        @Override
+        protected void compute() {
+            if(toRow - fromRow <= bandRows) {
+                rowRange.run(fromRow, toRow);
+                return;
+            }
+            int mid = (fromRow + toRow) / 2;
+            invokeAll(new RowBandTask(fromRow, mid, bandRows, rowRange),
+                    new RowBandTask(mid, toRow, bandRows, rowRange));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts an Image object to an Ascii picture by matching the shape of every tile, rather than only its
+ * brightness, to the shapes of the charset's chars, so a diagonal edge becomes '/' or '\' and a line
+ * becomes '-' or '|'.
+ * Every glyph is a 16*16 bit mask from the glyph atlas, four longs. Every tile is reduced to the same 16*16
+ * grid and thresholded at its own average brightness, and the char whose mask differs from it in the
+ * fewest bits, counted with Long.bitCount, is chosen. Tiles of almost uniform brightness have no shape to
+ * match and are matched by brightness like in BrightnessImgCharMatcher.
+ * @see BrightnessImgCharMatcher
+ * @author eran_turgeman
+ */
+public class ShapeImgCharMatcher {
+    //========================================= private constants =========================================
+    private static final int GLYPH_PIXELS = 16;
+    private static final int GLYPH_CELLS = GLYPH_PIXELS * GLYPH_PIXELS;
+    private static final int MASK_WORDS = GLYPH_CELLS / Long.SIZE;
+    // tiles whose cells' brightness spreads less than this are matched by brightness
+    private static final double MIN_CONTRAST = 0.1;
+    
+    //========================================= private fields =========================================
+    private final Image image;
+    private final String font;
+    private final ForkJoinPool pool;
+    private final CharPalette palette;
+    private volatile ConversionStats lastStats;
+    
+    //========================================= public functions =========================================
+    
+    /**
+     * Constructor
+     * @param image a king of an Image object (any class implementing Image interface)
+     * @param font the requested font to the ascii chars conversion
+     * @param pool the pool to match the tiles on, or null to match them sequentially on the calling thread
+     */
+    public ShapeImgCharMatcher(Image image, String font, ForkJoinPool pool){
+        this.image = image;
+        this.font = font;
+        this.pool = pool;
+        this.palette = new CharPalette(font);
+    }
+    
+    /**
+     * @return the time spent in the phases of the last conversion and what it did, or null if nothing
+     * was converted yet. Thresholding and matching a tile are done together, and are counted as matching
+     */
+    public ConversionStats getLastStats(){
+        return lastStats;
+    }
+    
+    /**
+     * returns an array of chars that represents a picture
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param charSet the set of chars we want to draw the picture with
+     * @return 2-Dim array representing a picture
+     */
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet){
+        return chooseChars(numCharsInRow, charSet, null);
+    }
+    
+    /**
+     * returns an array of chars that represents a picture, reporting the rows it completes to a progress
+     * through which the conversion can be cancelled from another thread
+     * @param numCharsInRow amount of chars to draw in a line
+     * @param charSet the set of chars we want to draw the picture with
+     * @param progress the progress of the conversion, or null if it isn't tracked
+     * @return 2-Dim array representing a picture
+     * @throws java.util.concurrent.CancellationException if the conversion is cancelled
+     */
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet, ConversionProgress progress){
+        if(charSet == null || numCharsInRow <= 0){
+            return null;
+        }
+        if(charSet.length == 0){
+            return new char[0][0];
+        }
+        
+        long startNanos = System.nanoTime();
+        long renderedGlyphs = GlyphAtlas.getShared().getRenderedGlyphs();
+        CharLookupTable charLookup = palette.update(charSet);
+        char[] chars = new char[charSet.length];
+        long[] masks = new long[charSet.length * MASK_WORDS];
+        for(int i = 0; i < chars.length; i++){
+            chars[i] = charSet[i];
+            System.arraycopy(GlyphAtlas.getShared().getMask(chars[i], GLYPH_PIXELS, font), 0,
+                    masks, i * MASK_WORDS, MASK_WORDS);
+        }
+        long glyphNanos = System.nanoTime() - startNanos;
+        renderedGlyphs = GlyphAtlas.getShared().getRenderedGlyphs() - renderedGlyphs;
+        
+        int pixels = image.getWidth() / numCharsInRow;
+        char[][] asciiArt = new char[image.getHeight() / pixels][image.getWidth() / pixels];
+        startNanos = System.nanoTime();
+        RowBands.forEach(image.isStreamed() ? null : pool, asciiArt.length, progress, (fromRow, toRow) -> {
+            TileShape shape = new TileShape(pixels);
+            for(int i = fromRow; i < toRow; i++){
+                for(int j = 0; j < asciiArt[i].length; j++){
+                    shape.read(image, j * pixels, i * pixels);
+                    asciiArt[i][j] = shape.contrast < MIN_CONTRAST ? charLookup.closestChar(shape.brightness) :
+                            chars[closestMask(shape.mask, masks)];
+                }
+            }
+        });
+        long matchNanos = System.nanoTime() - startNanos;
+        
+        long tiles = (long)asciiArt.length * (asciiArt.length == 0 ? 0 : asciiArt[0].length);
+        lastStats = new ConversionStats(glyphNanos, 0, matchNanos, tiles, tiles, 0, 0, renderedGlyphs);
+        return asciiArt;
+    }
+    
+    //========================================= private functions =========================================
+    /*
+     * returns the index of the glyph mask with the fewest bits different from the tile's mask. the distance
+     * and the index are packed into a single long, so the minimum is taken without branches and ties go to
+     * the first glyph
+     */
+    private static int closestMask(long[] tileMask, long[] masks){
+        long t0 = tileMask[0], t1 = tileMask[1], t2 = tileMask[2], t3 = tileMask[3];
+        long best = Long.MAX_VALUE;
+        for(int glyph = 0, word = 0; word < masks.length; glyph++, word += MASK_WORDS){
+            long distance = Long.bitCount(t0 ^ masks[word]) + Long.bitCount(t1 ^ masks[word + 1]) +
+                            Long.bitCount(t2 ^ masks[word + 2]) + Long.bitCount(t3 ^ masks[word + 3]);
+            best = Math.min(best, distance << Integer.SIZE | glyph);
+        }
+        return (int)best;
+    }
+    
+    /*
+     * a tile reduced to the glyphs' grid: its bit mask, average brightness and contrast. one instance is
+     * reused for all the tiles of a band
+     */
+    private static class TileShape {
+        private final int pixels;
+        // the tile is averaged into cellsInRow*cellsInRow cells, fewer than the glyph's if the tile is smaller
+        private final int cellsInRow;
+        private final double[] cells;
+        private final int[] row;
+        private final long[] mask = new long[MASK_WORDS];
+        private double brightness;
+        private double contrast;
+        
+        TileShape(int pixels){
+            this.pixels = pixels;
+            this.cellsInRow = Math.min(pixels, GLYPH_PIXELS);
+            this.cells = new double[cellsInRow * cellsInRow];
+            this.row = new int[pixels];
+        }
+        
+        /*
+         * reads the tile whose top left pixel is (startX, startY)
+         */
+        void read(Image image, int startX, int startY){
+            Arrays.fill(cells, 0);
+            for(int y = 0; y < pixels; y++){
+                image.getRowArgb(startY + y, startX, pixels, row, 0);
+                int cellRow = y * cellsInRow / pixels * cellsInRow;
+                for(int x = 0; x < pixels; x++){
+                    cells[cellRow + x * cellsInRow / pixels] +=
+                            BrightnessImgCharMatcher.getGreyNormalized(row[x]);
+                }
+            }
+            double pixelsInCell = (double)pixels * pixels / cells.length;
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for(int i = 0; i < cells.length; i++){
+                cells[i] /= pixelsInCell;
+                sum += cells[i];
+                min = Math.min(min, cells[i]);
+                max = Math.max(max, cells[i]);
+            }
+            brightness = sum / cells.length;
+            contrast = max - min;
+            
+            Arrays.fill(mask, 0);
+            for(int bit = 0; bit < GLYPH_CELLS; bit++){
+                int cellY = bit / GLYPH_PIXELS * cellsInRow / GLYPH_PIXELS;
+                int cellX = bit % GLYPH_PIXELS * cellsInRow / GLYPH_PIXELS;
+                long isWhite = cells[cellY * cellsInRow + cellX] > brightness ? 1L : 0L;
+                mask[bit / Long.SIZE] |= isWhite << (bit % Long.SIZE);
+            }
+        }
+    }
+}
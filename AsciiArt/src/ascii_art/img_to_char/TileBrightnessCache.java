@@ -0,0 +1,155 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of tile brightness values, keyed by the tile's position and size packed into a long.
+ * Keys and values are kept in primitive arrays organised as a set-associative table, so the cache
+ * never allocates after construction and its memory use is fixed by its capacity.
+ * When a set is full, an entry is evicted according to the cache's eviction policy.
+ * Safe for use by multiple threads.
+ * @author eran_turgeman
+ */
+public class TileBrightnessCache {
+    /**
+     * The entry evicted from a full set
+     */
+    public enum Eviction {
+        /** the least recently read or written entry */
+        LRU,
+        /** the entry written first, reads don't matter */
+        FIFO
+    }
+
+    private static final int WAYS = 4;
+    private static final int LOCK_STRIPES = 64;
+    private static final long EMPTY = -1;
+    private static final int COORD_BITS = 24;
+    private static final int SIZE_BITS = 16;
+
+    private final Eviction eviction;
+    private final int setMask;
+    private final long[] keys;
+    private final float[] values;
+    private final long[] stamps;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor
+     * @param capacity the maximal number of tiles to keep, rounded up to a power of two
+     * @param eviction the policy choosing which tile to evict when the cache is full
+     */
+    public TileBrightnessCache(int capacity, Eviction eviction) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException();
+        int minSets = (capacity + WAYS - 1) / WAYS;
+        int sets = minSets == 1 ? 1 : Integer.highestOneBit(minSets - 1) << 1;
+        this.eviction = eviction;
+        this.setMask = sets - 1;
+        this.keys = new long[sets * WAYS];
+        this.values = new float[sets * WAYS];
+        this.stamps = new long[sets * WAYS];
+        Arrays.fill(keys, EMPTY);
+        for(int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Packs the position and size of a square tile into a cache key
+     * @param x the left column of the tile, in pixels
+     * @param y the top row of the tile, in pixels
+     * @param size the width and height of the tile, in pixels
+     * @return the key of the tile
+     */
+    public static long key(int x, int y, int size) {
+        return ((long)x << (COORD_BITS + SIZE_BITS)) | ((long)y << SIZE_BITS) | size;
+    }
+
+    /**
+     * @param key a tile key, as returned by key
+     * @return the cached brightness of the tile, or NaN if it isn't cached
+     */
+    public float get(long key) {
+        int set = setOf(key);
+        synchronized(locks[set & (LOCK_STRIPES - 1)]) {
+            int first = set * WAYS;
+            for(int i = first; i < first + WAYS; i++) {
+                if(keys[i] == key) {
+                    if(eviction == Eviction.LRU) {
+                        stamps[i] = nextStamp(first);
+                    }
+                    hits.increment();
+                    return values[i];
+                }
+            }
+        }
+        misses.increment();
+        return Float.NaN;
+    }
+
+    /**
+     * Caches the brightness of a tile, evicting another tile if needed
+     * @param key a tile key, as returned by key
+     * @param brightness the brightness of the tile
+     */
+    public void put(long key, float brightness) {
+        int set = setOf(key);
+        synchronized(locks[set & (LOCK_STRIPES - 1)]) {
+            int first = set * WAYS;
+            int victim = first;
+            for(int i = first; i < first + WAYS; i++) {
+                if(keys[i] == key || keys[i] == EMPTY) {
+                    victim = i;
+                    break;
+                }
+                if(stamps[i] < stamps[victim]) {
+                    victim = i;
+                }
+            }
+            keys[victim] = key;
+            values[victim] = brightness;
+            stamps[victim] = nextStamp(first);
+        }
+    }
+
+    /**
+     * @return the number of lookups that found their tile
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find their tile
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the maximal number of tiles the cache keeps
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    private int setOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int)(hash >>> 32) & setMask;
+    }
+
+    /*
+     * stamps order the entries of a single set, so a set's next stamp is one more than its newest entry
+     */
+    private long nextStamp(int first) {
+        long newest = 0;
+        for(int i = first; i < first + WAYS; i++) {
+            newest = Math.max(newest, stamps[i]);
+        }
+        return newest + 1;
+    }
+}
@@ -0,0 +1,157 @@
+package ascii_art.img_to_char;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the grids a matcher computes for a resolution: the brightness of every tile and the
+ * average color of every tile, keyed by the tile size packed into a long.
+ * A grid is kept whole or not at all, and the cache's memory use is bounded by the total size of the grids
+ * it keeps. When a new grid exceeds the bound, grids are evicted according to the cache's eviction policy,
+ * except the new grid itself, which is kept even if it alone exceeds the bound.
+ * Safe for use by multiple threads.
+ * @author eran_turgeman
+ */
+public class TileGridCache {
+    private static final int BYTES_PER_CELL = Float.BYTES;
+
+    private final long capacityBytes;
+    private final Map<Long, Grids> grids;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor
+     * @param capacityBytes the maximal total size of the grids to keep, in bytes
+     * @param eviction the policy choosing which grid to evict when the cache is full
+     */
+    public TileGridCache(long capacityBytes, TileBrightnessCache.Eviction eviction) {
+        if(capacityBytes <= 0)
+            throw new IllegalArgumentException();
+        this.capacityBytes = capacityBytes;
+        this.grids = new LinkedHashMap<>(16, 0.75f, eviction == TileBrightnessCache.Eviction.LRU);
+    }
+
+    /**
+     * @param key a tile size key
+     * @return the brightness grid of the tile size, or null if it isn't cached
+     */
+    public synchronized float[] getBrightness(long key) {
+        Grids entry = grids.get(key);
+        return count(entry == null ? null : entry.brightness);
+    }
+
+    /**
+     * Caches the brightness grid of a tile size, unless one is cached already
+     * @param key a tile size key
+     * @param brightness the brightness of every tile
+     * @return the grid cached for the tile size, the given one unless another was cached first
+     */
+    public synchronized float[] putBrightnessIfAbsent(long key, float[] brightness) {
+        Grids entry = grids.computeIfAbsent(key, k -> new Grids());
+        if(entry.brightness == null) {
+            entry.brightness = brightness;
+            add(key, brightness.length);
+        }
+        return entry.brightness;
+    }
+
+    /**
+     * @param key a tile size key
+     * @return whether the brightness grid of the tile size is cached. Doesn't count as a lookup
+     */
+    public synchronized boolean containsBrightness(long key) {
+        Grids entry = grids.get(key);
+        return entry != null && entry.brightness != null;
+    }
+
+    /**
+     * @param key a tile size key
+     * @return the color grid of the tile size, or null if it isn't cached
+     */
+    public synchronized int[] getColors(long key) {
+        Grids entry = grids.get(key);
+        return count(entry == null ? null : entry.colors);
+    }
+
+    /**
+     * Caches the color grid of a tile size, replacing the one cached before
+     * @param key a tile size key
+     * @param colors the average color of every tile
+     */
+    public synchronized void putColors(long key, int[] colors) {
+        Grids entry = grids.computeIfAbsent(key, k -> new Grids());
+        if(entry.colors != null) {
+            sizeBytes -= (long)entry.colors.length * BYTES_PER_CELL;
+        }
+        entry.colors = colors;
+        add(key, colors.length);
+    }
+
+    /**
+     * @return the number of lookups that found their grid
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that didn't find their grid
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the total size of the cached grids, in bytes
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return the maximal total size of the grids the cache keeps, in bytes
+     */
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    private <T> T count(T grid) {
+        if(grid == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return grid;
+    }
+
+    /*
+     * accounts for a grid added to the entry of the given key, and evicts other entries while over capacity
+     */
+    private void add(long key, int cells) {
+        sizeBytes += (long)cells * BYTES_PER_CELL;
+        Iterator<Map.Entry<Long, Grids>> eldest = grids.entrySet().iterator();
+        while(sizeBytes > capacityBytes && eldest.hasNext()) {
+            Map.Entry<Long, Grids> entry = eldest.next();
+            if(entry.getKey() != key) {
+                sizeBytes -= entry.getValue().sizeBytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    /*
+     * the grids of a single tile size, either of which may not be computed yet
+     */
+    private static class Grids {
+        private float[] brightness;
+        private int[] colors;
+
+        long sizeBytes() {
+            return ((brightness == null ? 0L : brightness.length) + (colors == null ? 0L : colors.length)) *
+                    BYTES_PER_CELL;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a sequence of 2D arrays of chars,
+ * the frames of an animation, in some fashion.
+ * @author eran_turgeman
+ */
+public interface AsciiAnimationOutput {
+    /**
+     * Output the next frame of the animation
+     * @param chars the frame
+     * @param delayMillis how long the frame should be shown, in milliseconds
+     */
+    void outputFrame(char[][] chars, int delayMillis);
+
+    /**
+     * Called after the last frame
+     */
+    void finish();
+}
@@ -10,4 +10,21 @@ public interface AsciiOutput {
      * Output the specified 2D array of chars
      */
     void output(char[][] chars);
+
+    /**
+     * Output the specified 2D array of chars, each in the color of the same cell of colors.
+     * Outputs that can't show colors output the chars alone.
+     * @param chars the chars to output
+     * @param colors the color of every char, packed as an RGB int
+     */
+    default void output(char[][] chars, int[][] colors) {
+        output(chars);
+    }
+
+    /**
+     * The number of bytes the last output wrote, or -1 if the output doesn't count them
+     */
+    default long getBytesWritten() {
+        return -1;
+    }
 }
@@ -0,0 +1,78 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * A package-private class of the package ascii_output.
+ * A Writer encoding chars straight into a reusable direct ByteBuffer, which is handed to a channel
+ * whenever it fills up. Writing whole char arrays through it allocates nothing.
+ * @author eran_turgeman
+ */
+class ChannelWriter extends Writer {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    /**
+     * Constructor
+     * @param channel the channel to write to
+     * @param charset the charset to encode the chars with
+     * @param closeChannel whether closing the writer should close the channel as well
+     */
+    ChannelWriter(WritableByteChannel channel, Charset charset, boolean closeChannel) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.encoder = charset.newEncoder();
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+        while(true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if(result.isOverflow()) {
+                drain();
+            } else if(result.isUnderflow()) {
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        encoder.encode(CharBuffer.allocate(0), bytes, true);
+        encoder.flush(bytes);
+        drain();
+        if(closeChannel) {
+            channel.close();
+        }
+    }
+
+    /*
+     * writes the encoded bytes to the channel and empties the buffer
+     */
+    private void drain() throws IOException {
+        bytes.flip();
+        while(bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
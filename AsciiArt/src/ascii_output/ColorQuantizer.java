@@ -0,0 +1,25 @@
+package ascii_output;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Rounds colors down to fewer bits per channel, so neighbouring cells of nearly the same color are
+ * written with a single color escape or span.
+ * @author eran_turgeman
+ */
+class ColorQuantizer {
+    // 5 bits of every channel are 32768 colors, which are hard to tell apart from 24 bit ones
+    private static final int CHANNEL_BITS = 5;
+    private static final int CHANNEL_MASK = (0xFF << (8 - CHANNEL_BITS)) & 0xFF;
+    private static final int RGB_MASK = CHANNEL_MASK << 16 | CHANNEL_MASK << 8 | CHANNEL_MASK;
+
+    private ColorQuantizer() {
+    }
+
+    /**
+     * @param rgb a color packed as an RGB int, the alpha is ignored
+     * @return the quantised color, packed as an RGB int
+     */
+    static int quantize(int rgb) {
+        return rgb & RGB_MASK;
+    }
+}
@@ -0,0 +1,50 @@
+package ascii_output;
+
+/**
+ * Play the frames of an animation in the console, redrawing every frame in place with ANSI escapes.
+ * The frames are drawn by a ConsoleAsciiOutput, so every frame is a single buffered write.
+ * @author eran_turgeman
+ */
+public class ConsoleAnimationOutput implements AsciiAnimationOutput {
+    private final ConsoleAsciiOutput console = new ConsoleAsciiOutput();
+    private boolean started;
+    private long nextFrameNanos;
+
+    /**
+     * Constructor
+     */
+    public ConsoleAnimationOutput() {
+        console.setRedrawing(true);
+    }
+
+    @Override
+    public void outputFrame(char[][] chars, int delayMillis) {
+        waitForFrameTime();
+        // the console is written through an interruptible channel, which an interrupted write would close
+        if(Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        console.output(chars);
+        started = true;
+        nextFrameNanos = System.nanoTime() + delayMillis * 1_000_000L;
+    }
+
+    @Override
+    public void finish() {
+        waitForFrameTime();
+    }
+
+    /*
+     * waits until the previous frame was shown for its delay
+     */
+    private void waitForFrameTime() {
+        long remaining = nextFrameNanos - System.nanoTime();
+        if(started && remaining > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000L, (int)(remaining % 1_000_000L));
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
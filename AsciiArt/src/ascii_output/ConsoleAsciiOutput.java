@@ -1,16 +1,179 @@
 package ascii_output;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * Every frame is built in a StringBuilder, encoded straight into a byte buffer sized to the largest frame
+ * so far, both reused between frames, and written to a channel of the standard output with a single
+ * write, rather than printing every char. Optionally, every frame is redrawn in place of the previous
+ * one with ANSI escapes.
  * @author Dan Nirel
  */public class ConsoleAsciiOutput implements AsciiOutput{
+    private static final String ANSI_COLOR = "\033[38;2;";
+    private static final String ANSI_RESET = "\033[0m";
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final String CURSOR_HOME = "\033[H";
+    private static final String CLEAR_LINE_END = "\033[K";
+    private static final String CLEAR_SCREEN_END = "\033[J";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    // the channel of the standard output, shared by all the outputs and never closed
+    private static WritableByteChannel stdout;
+
+    private final boolean isPadded;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+    private final StringBuilder frame = new StringBuilder();
+    private ByteBuffer frameBytes = ByteBuffer.allocateDirect(0);
+    private boolean isRedrawing;
+    private boolean isScreenCleared;
+    private long bytesWritten = -1;
+
+    /**
+     * Constructor of an output that follows every char with a space, so square chars look square in a
+     * console's cells
+     */
+    public ConsoleAsciiOutput() {
+        this(true);
+    }
+
+    /**
+     * Constructor
+     * @param isPadded whether every char is followed by a space. Chars matched to cells of the console's
+     *                 own aspect need no padding, and print half the bytes without it
+     */
+    public ConsoleAsciiOutput(boolean isPadded) {
+        this(isPadded, getStdout());
+    }
+
+    /**
+     * Constructor of an output writing its frames to a given channel instead of the standard output
+     * @param isPadded whether every char is followed by a space
+     * @param channel the channel to write to, which the output never closes
+     */
+    public ConsoleAsciiOutput(boolean isPadded, WritableByteChannel channel) {
+        this.isPadded = isPadded;
+        this.channel = channel;
+    }
+
+    /**
+     * @param isRedrawing whether every frame is drawn in place of the previous one, from the top of the
+     *                    console, instead of below it
+     */
+    public void setRedrawing(boolean isRedrawing) {
+        if (this.isRedrawing != isRedrawing) {
+            this.isRedrawing = isRedrawing;
+            this.isScreenCleared = false;
+        }
+    }
+
     @Override
     public void output(char[][] chars) {
+        output(chars, null);
+    }
+
+    /**
+     * Prints the chars with ANSI 24 bit color escapes, writing an escape only where the quantised color
+     * changes
+     */
+    @Override
+    public void output(char[][] chars, int[][] colors) {
+        frame.setLength(0);
+        if (isRedrawing) {
+            if (!isScreenCleared) {
+                frame.append(CLEAR_SCREEN);
+                isScreenCleared = true;
+            }
+            frame.append(CURSOR_HOME);
+        }
         for (int y = 0; y < chars.length ; y++) {
+            int lineColor = -1;
             for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+                if (colors != null) {
+                    int color = ColorQuantizer.quantize(colors[y][x]);
+                    if (color != lineColor) {
+                        frame.append(ANSI_COLOR).append((color >> 16) & 0xFF).append(';')
+                                .append((color >> 8) & 0xFF).append(';').append(color & 0xFF).append('m');
+                        lineColor = color;
+                    }
+                }
+                frame.append(chars[y][x]);
+                if (isPadded) {
+                    frame.append(' ');
+                }
+            }
+            if (colors != null) {
+                frame.append(ANSI_RESET);
+            }
+            if (isRedrawing) {
+                frame.append(CLEAR_LINE_END);
+            }
+            frame.append(LINE_SEPARATOR);
+        }
+        if (isRedrawing) {
+            frame.append(CLEAR_SCREEN_END);
+        }
+        writeFrame();
+    }
+
+    /**
+     * The number of bytes the last output printed, including its escapes
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /*
+     * encodes the frame and writes it with a single write, after anything printed to System.out before it
+     */
+    private void writeFrame() {
+        int maxBytes = (int)Math.ceil(frame.length() * (double)encoder.maxBytesPerChar());
+        if (frameBytes.capacity() < maxBytes) {
+            frameBytes = ByteBuffer.allocateDirect(maxBytes);
+        }
+        frameBytes.clear();
+        encoder.reset();
+        System.out.flush();
+        long written = 0;
+        try {
+            CoderResult result = encoder.encode(CharBuffer.wrap(frame), frameBytes, true);
+            if (result.isError()) {
+                result.throwException();
             }
-            System.out.println();
+            encoder.flush(frameBytes);
+            frameBytes.flip();
+            // a channel may accept part of the bytes, such as a pipe that's full
+            while (frameBytes.hasRemaining()) {
+                written += channel.write(frameBytes);
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console: " + e.getMessage());
+            bytesWritten = -1;
+            return;
+        }
+        bytesWritten = written;
+    }
+
+    /*
+     * the channel of the standard output. writing through it skips System.out's lock and its encoding of
+     * every print, and closing the channel would close the standard output, so it's never closed.
+     * like any interruptible channel it's closed as well if a thread writing to it is interrupted, so the
+     * outputs must be written on threads that aren't interrupted
+     */
+    private static synchronized WritableByteChannel getStdout() {
+        if (stdout == null) {
+            stdout = new FileOutputStream(FileDescriptor.out).getChannel();
         }
+        return stdout;
     }
 }
@@ -0,0 +1,78 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output the frames of an animation to an HTML file, which plays them in a loop when viewed in a
+ * web browser. Frames are written as they arrive, so the animation is never held in memory.
+ * @author eran_turgeman
+ */
+public class HtmlAnimationOutput implements AsciiAnimationOutput {
+    private static final String FRAME_ATTRIBUTES = " class=\"frame\" data-delay=\"%d\"";
+    private static final String HIDDEN_STYLE = "\tDISPLAY:none;";
+    private static final String PLAYER_SCRIPT =
+            "<script>\n"+
+            "var frames = document.getElementsByClassName(\"frame\"), current = 0;\n"+
+            "function next() {\n"+
+            "\tframes[current].style.display = \"none\";\n"+
+            "\tcurrent = (current + 1) % frames.length;\n"+
+            "\tframes[current].style.display = \"block\";\n"+
+            "\tsetTimeout(next, frames[current].dataset.delay);\n"+
+            "}\n"+
+            "if(frames.length > 1) setTimeout(next, frames[0].dataset.delay);\n"+
+            "</script>\n";
+
+    private final HtmlAsciiOutput page;
+    private Writer writer;
+    private boolean failed;
+
+    /**
+     * @param filename the file to write
+     * @param fontName the font to display the chars with
+     */
+    public HtmlAnimationOutput(String filename, String fontName) {
+        this.page = new HtmlAsciiOutput(filename, fontName, true, false);
+    }
+
+    @Override
+    public void outputFrame(char[][] chars, int delayMillis) {
+        if(failed)
+            return;
+        try {
+            boolean first = writer == null;
+            if(first) {
+                writer = page.openWriter();
+                page.writeDocumentStart(writer);
+            }
+            page.writeParagraph(writer, chars, String.format(FRAME_ATTRIBUTES, delayMillis),
+                    first ? "" : HIDDEN_STYLE);
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void finish() {
+        if(failed || writer == null)
+            return;
+        try(Writer pageWriter = writer) {
+            pageWriter.write(PLAYER_SCRIPT);
+            page.writeDocumentEnd(pageWriter);
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    private void fail() {
+        failed = true;
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", page.getFilename()));
+        try {
+            if(writer != null)
+                writer.close();
+        } catch(IOException ignored) {
+            //already reported
+        }
+    }
+}
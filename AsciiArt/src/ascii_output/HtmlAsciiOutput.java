@@ -1,63 +1,209 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Every row is escaped into a reusable char buffer and written in bulk, optionally through a
+ * FileChannel or gzip compressed.
  * @author Dan Nirel
  */
 public class HtmlAsciiOutput implements AsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int MAX_ESCAPE_LENGTH = "&amp;".length();
+    private static final String SPAN_START = "<span style=\"color:#";
+    private static final String SPAN_START_END = "\">";
+    private static final String SPAN_END = "</span>";
+    private static final int RGB_HEX_DIGITS = 6;
+    private static final int MAX_SPAN_LENGTH =
+            SPAN_START.length() + RGB_HEX_DIGITS + SPAN_START_END.length() + SPAN_END.length();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int GZIP_BUFFER_BYTES = 1 << 16;
 
     private final String fontName;
     private final String filename;
+    private final boolean useChannel;
+    private final boolean gzip;
+    private char[] rowBuffer = new char[0];
+    private long bytesWritten = -1;
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false, false);
+    }
+
+    /**
+     * @param filename the file to write
+     * @param fontName the font to display the chars with
+     * @param useChannel whether to encode the file into a direct buffer written to a FileChannel
+     * @param gzip whether to gzip compress the file, the channel isn't used for compressed files
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean useChannel, boolean gzip) {
         this.fontName = fontName;
         this.filename = filename;
+        this.useChannel = useChannel;
+        this.gzip = gzip;
     }
 
     @Override
     public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+        output(chars, null);
+    }
+
+    /**
+     * Writes every run of cells of the same quantised color in a single span, so the file grows with
+     * the number of color changes rather than with the number of cells
+     */
+    @Override
+    public void output(char[][] chars, int[][] colors) {
+        try(Writer writer = openWriter()) {
+            writeDocument(writer, chars, colors);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            bytesWritten = -1;
+            return;
+        }
+        bytesWritten = new File(filename).length();
+    }
+
+    /**
+     * Writes the html document of the chars to a given writer instead of to the output's file.
+     * The writer isn't closed.
+     * @param writer the writer to write the document to
+     * @param chars the chars to write
+     * @param colors the color of every char packed as an RGB int, or null to write the chars in black
+     * @throws IOException if writing fails
+     */
+    public void writeDocument(Writer writer, char[][] chars, int[][] colors) throws IOException {
+        writeDocumentStart(writer);
+        writeParagraph(writer, chars, colors, "", "");
+        writeDocumentEnd(writer);
+    }
+
+    /**
+     * The size of the file the last output wrote, compressed if the output is gzip compressed
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /*
+     * opens the file for writing, according to the options given in the constructor
+     */
+    Writer openWriter() throws IOException {
+        if(gzip) {
+            return new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(filename), GZIP_BUFFER_BYTES)));
+        }
+        if(useChannel) {
+            return new ChannelWriter(FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), Charset.defaultCharset(), true);
+        }
+        return new BufferedWriter(new FileWriter(filename));
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    void writeDocumentStart(Writer writer) throws IOException {
+        writer.write(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n");
+    }
+
+    /*
+     * writes a paragraph holding the chars, the attributes and style are added to the paragraph's tag
+     */
+    void writeParagraph(Writer writer, char[][] chars, String attributes, String extraStyle) throws IOException {
+        writeParagraph(writer, chars, null, attributes, extraStyle);
+    }
+
+    /*
+     * writes a paragraph holding the chars in their colors, or in the page's color if colors is null
+     */
+    void writeParagraph(Writer writer, char[][] chars, int[][] colors, String attributes, String extraStyle)
+            throws IOException {
+        writer.write(String.format(
+            "<p%s style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;%s\">\n",
+                attributes, fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING, extraStyle));
+
+        for(int y = 0 ; y < chars.length ; y++) {
+            int length = escapeRow(chars[y], colors == null ? null : colors[y]);
+            writer.write(rowBuffer, 0, length);
+        }
+        writer.write("</p>\n");
+    }
+
+    void writeDocumentEnd(Writer writer) throws IOException {
+        writer.write(
+            "</body>\n"+
+            "</html>\n");
+    }
+
+    /*
+     * writes the html representation of a row, followed by a line separator, to the row buffer
+     * and returns its length. colored rows open a span whenever the quantised color changes
+     */
+    private int escapeRow(char[] row, int[] colors) {
+        int maxCellLength = colors == null ? MAX_ESCAPE_LENGTH : MAX_ESCAPE_LENGTH + MAX_SPAN_LENGTH;
+        int maxLength = row.length * maxCellLength + LINE_SEPARATOR.length();
+        if(rowBuffer.length < maxLength) {
+            rowBuffer = new char[maxLength];
+        }
+        int length = 0;
+        int spanColor = -1;
+        for(int i = 0; i < row.length; i++) {
+            if(colors != null) {
+                int color = ColorQuantizer.quantize(colors[i]);
+                if(color != spanColor) {
+                    if(spanColor != -1) {
+                        length = append(SPAN_END, length);
                     }
-                    writer.write(htmlRep);
+                    length = appendSpanStart(color, length);
+                    spanColor = color;
                 }
-                writer.newLine();
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
-        } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            char c = row[i];
+            switch(c) {
+                case '<': length = append("&lt;", length);  break;
+                case '>': length = append("&gt;", length);  break;
+                case '&': length = append("&amp;", length); break;
+                default:  rowBuffer[length++] = c;
+            }
+        }
+        if(spanColor != -1) {
+            length = append(SPAN_END, length);
         }
+        return append(LINE_SEPARATOR, length);
+    }
+
+    private int appendSpanStart(int color, int length) {
+        length = append(SPAN_START, length);
+        for(int shift = (RGB_HEX_DIGITS - 1) * 4; shift >= 0; shift -= 4) {
+            rowBuffer[length++] = Character.forDigit((color >> shift) & 0xF, 16);
+        }
+        return append(SPAN_START_END, length);
+    }
+
+    private int append(String str, int length) {
+        str.getChars(0, str.length(), rowBuffer, length);
+        return length + str.length();
     }
 }
@@ -0,0 +1,381 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A sequence of equally sized frames, read from an animated GIF or from a list of image files.
+ * Frames are decoded lazily while iterating, and every frame knows which of its pixels changed
+ * since the previous frame, so consumers can skip the parts of the picture that stand still.
+ * @author eran_turgeman
+ */
+public class Animation implements Iterable<Animation.Frame> {
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+    private static final int GIF_DELAY_UNIT_MILLIS = 10;
+    private static final int BACKGROUND_COLOR = Color.WHITE.getRGB();
+    private static final String GIF_FORMAT = "gif";
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    private final String gifFilename;
+    private final List<String> frameFilenames;
+
+    /**
+     * Opens an animated GIF. Every frame is composed over the previous ones according to its
+     * disposal method, over a white background.
+     * @param filename a path to a GIF file on disk
+     * @return the animation of the file
+     */
+    public static Animation fromGif(String filename) {
+        return new Animation(filename, null);
+    }
+
+    /**
+     * Opens a sequence of frames, each stored in its own image file. All the frames must have
+     * the dimensions of the first one.
+     * @param filenames the paths to the frames' files, in order
+     * @return the animation of the files
+     */
+    public static Animation fromFrameFiles(List<String> filenames) {
+        return new Animation(null, List.copyOf(filenames));
+    }
+
+    private Animation(String gifFilename, List<String> frameFilenames) {
+        this.gifFilename = gifFilename;
+        this.frameFilenames = frameFilenames;
+    }
+
+    /**
+     * Decodes the frames in order. Failing to decode a frame throws an UncheckedIOException
+     * from the iterator.
+     * @return an iterator over the frames of the animation
+     */
+    @Override
+    public Iterator<Frame> iterator() {
+        try {
+            return gifFilename != null ? new GifFrames() : new FileFrames();
+        } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * A single frame of an animation
+     */
+    public static class Frame {
+        private final Image image;
+        private final int delayMillis;
+        private final int contentX;
+        private final int contentY;
+        // per row of the frame's content, the changed columns are [dirtyFrom, dirtyTo)
+        private final int[] dirtyFrom;
+        private final int[] dirtyTo;
+        // the rows of the frame's content with changed pixels are [dirtyTop, dirtyBottom)
+        private final int dirtyTop;
+        private final int dirtyBottom;
+
+        private Frame(FileImage image, int delayMillis, int[] dirtyFrom, int[] dirtyTo, int dirtyTop,
+                      int dirtyBottom) {
+            this.image = image;
+            this.delayMillis = delayMillis;
+            this.contentX = image.getContentX();
+            this.contentY = image.getContentY();
+            this.dirtyFrom = dirtyFrom;
+            this.dirtyTo = dirtyTo;
+            this.dirtyTop = dirtyTop;
+            this.dirtyBottom = dirtyBottom;
+        }
+
+        /**
+         * The picture of the frame, padded like images opened with Image.fromFile. The picture wraps
+         * the animation's composed canvas rather than copying it, so it's only valid until the next
+         * frame is decoded.
+         * @return the picture of the frame
+         */
+        public Image getImage() {
+            return image;
+        }
+
+        /**
+         * @return how long the frame should be shown, in milliseconds
+         */
+        public int getDelayMillis() {
+            return delayMillis;
+        }
+
+        /**
+         * @return the top row of the frame's image with a pixel that differs from the previous frame,
+         * or the image's height if no pixel changed
+         */
+        public int getChangedTop() {
+            return dirtyTop < dirtyBottom ? contentY + dirtyTop : image.getHeight();
+        }
+
+        /**
+         * @return the row below the bottom row of the frame's image with a pixel that differs from the
+         * previous frame, or the image's height if no pixel changed
+         */
+        public int getChangedBottom() {
+            return dirtyTop < dirtyBottom ? contentY + dirtyBottom : image.getHeight();
+        }
+
+        /**
+         * Whether any pixel of a rectangle differs from the previous frame. Every pixel of the
+         * first frame is considered changed.
+         * @param x the left column of the rectangle, in the frame's image
+         * @param y the top row of the rectangle, in the frame's image
+         * @param width the width of the rectangle
+         * @param height the height of the rectangle
+         * @return true if a pixel in the rectangle changed
+         */
+        public boolean isChanged(int x, int y, int width, int height) {
+            int firstRow = Math.max(0, y - contentY);
+            int lastRow = Math.min(dirtyFrom.length, y + height - contentY);
+            int from = x - contentX, to = x + width - contentX;
+            for(int row = firstRow; row < lastRow; row++) {
+                if(dirtyFrom[row] < to && from < dirtyTo[row])
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /*
+     * keeps the composed picture of the current frame, and turns it into frames
+     */
+    private abstract static class FrameIterator implements Iterator<Frame> {
+        private int[] previous;
+
+        /*
+         * creates a frame of the given picture, comparing only the given region to the previous picture
+         * since the rest of it is known to be unchanged. the frame wraps the picture's pixels as they are
+         */
+        Frame toFrame(BufferedImage picture, int[] pixels, Rectangle candidate, int delayMillis) {
+            int width = picture.getWidth(), height = picture.getHeight();
+            int[] dirtyFrom = new int[height];
+            int[] dirtyTo = new int[height];
+            int dirtyTop = height, dirtyBottom = 0;
+            Arrays.fill(dirtyFrom, width);
+            if(previous == null) {
+                previous = new int[pixels.length];
+                Arrays.fill(dirtyFrom, 0);
+                Arrays.fill(dirtyTo, width);
+                candidate = new Rectangle(0, 0, width, height);
+                dirtyTop = 0;
+                dirtyBottom = height;
+            } else {
+                candidate = candidate.intersection(new Rectangle(0, 0, width, height));
+                for(int row = candidate.y; row < candidate.y + candidate.height; row++) {
+                    int rowStart = row * width;
+                    int from = rowStart + candidate.x, to = from + candidate.width;
+                    int first = Arrays.mismatch(previous, from, to, pixels, from, to);
+                    if(first == -1)
+                        continue;
+                    int last = to - 1;
+                    while(previous[last] == pixels[last]) {
+                        last--;
+                    }
+                    dirtyFrom[row] = from + first - rowStart;
+                    dirtyTo[row] = last + 1 - rowStart;
+                    dirtyTop = Math.min(dirtyTop, row);
+                    dirtyBottom = row + 1;
+                }
+            }
+            for(int row = candidate.y; row < candidate.y + candidate.height; row++) {
+                int from = row * width + candidate.x;
+                System.arraycopy(pixels, from, previous, from, candidate.width);
+            }
+            return new Frame(new FileImage(pixels, width, height), delayMillis, dirtyFrom, dirtyTo, dirtyTop,
+                    dirtyBottom);
+        }
+    }
+
+    /*
+     * the frames of a gif, composed over each other. the reader and its input are closed once the last
+     * frame is decoded, or when decoding fails
+     */
+    private class GifFrames extends FrameIterator {
+        private final ImageInputStream input;
+        private final ImageReader reader;
+        private final int frames;
+        private final BufferedImage canvas;
+        private final int[] canvasPixels;
+        private int next = 0;
+        // the region the previous frame disposes of, and how
+        private Rectangle disposedRegion;
+        private String disposal;
+        private int[] savedPixels;
+        private boolean isClosed;
+
+        GifFrames() throws IOException {
+            input = ImageIO.createImageInputStream(new File(gifFilename));
+            if(input == null)
+                throw new IOException("Can't open " + gifFilename);
+            reader = ImageIO.getImageReadersByFormatName(GIF_FORMAT).next();
+            boolean isOpened = false;
+            try {
+                reader.setInput(input, false);
+                frames = reader.getNumImages(true);
+                IIOMetadataNode screen = findNode(reader.getStreamMetadata(), GIF_STREAM_METADATA,
+                        "LogicalScreenDescriptor");
+                int width = screen == null ? reader.getWidth(0) : intAttribute(screen, "logicalScreenWidth");
+                int height = screen == null ? reader.getHeight(0) : intAttribute(screen, "logicalScreenHeight");
+                canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                canvasPixels = ((DataBufferInt)canvas.getRaster().getDataBuffer()).getData();
+                Arrays.fill(canvasPixels, BACKGROUND_COLOR);
+                isOpened = true;
+            } finally {
+                if(!isOpened) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < frames;
+        }
+
+        @Override
+        public Frame next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            try {
+                BufferedImage frame = reader.read(next);
+                IIOMetadata metadata = reader.getImageMetadata(next);
+                next++;
+                IIOMetadataNode descriptor = findNode(metadata, GIF_IMAGE_METADATA, "ImageDescriptor");
+                IIOMetadataNode control = findNode(metadata, GIF_IMAGE_METADATA, "GraphicControlExtension");
+                Rectangle region = new Rectangle(intAttribute(descriptor, "imageLeftPosition"),
+                        intAttribute(descriptor, "imageTopPosition"), frame.getWidth(), frame.getHeight());
+
+                Rectangle candidate = region;
+                if(disposedRegion != null) {
+                    dispose();
+                    candidate = candidate.union(disposedRegion);
+                }
+                disposal = control == null ? null : control.getAttribute("disposalMethod");
+                disposedRegion = RESTORE_TO_BACKGROUND.equals(disposal) || RESTORE_TO_PREVIOUS.equals(disposal) ?
+                        region.intersection(new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight())) : null;
+                if(RESTORE_TO_PREVIOUS.equals(disposal) && !disposedRegion.isEmpty()) {
+                    savedPixels = canvas.getRGB(disposedRegion.x, disposedRegion.y,
+                            disposedRegion.width, disposedRegion.height, null, 0, disposedRegion.width);
+                }
+
+                Graphics2D graphics = canvas.createGraphics();
+                graphics.drawImage(frame, region.x, region.y, null);
+                graphics.dispose();
+                int delay = control == null ? 0 : intAttribute(control, "delayTime") * GIF_DELAY_UNIT_MILLIS;
+                if(!hasNext()) {
+                    close();
+                }
+                return toFrame(canvas, canvasPixels, candidate, delay > 0 ? delay : DEFAULT_DELAY_MILLIS);
+            } catch(IOException ioe) {
+                close();
+                throw new UncheckedIOException(ioe);
+            } catch(RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /*
+         * disposes of the reader and closes its input, ending the iteration
+         */
+        private void close() {
+            next = frames;
+            if(isClosed)
+                return;
+            isClosed = true;
+            reader.dispose();
+            try {
+                input.close();
+            } catch(IOException ioe) {
+                // nothing is read from the input anymore, so failing to close it loses nothing
+            }
+        }
+
+        /*
+         * restores the region of the previous frame, according to its disposal method
+         */
+        private void dispose() {
+            if(disposedRegion.isEmpty())
+                return;
+            if(RESTORE_TO_PREVIOUS.equals(disposal)) {
+                canvas.setRGB(disposedRegion.x, disposedRegion.y, disposedRegion.width, disposedRegion.height,
+                        savedPixels, 0, disposedRegion.width);
+                return;
+            }
+            for(int row = disposedRegion.y; row < disposedRegion.y + disposedRegion.height; row++) {
+                int from = row * canvas.getWidth() + disposedRegion.x;
+                Arrays.fill(canvasPixels, from, from + disposedRegion.width, BACKGROUND_COLOR);
+            }
+        }
+    }
+
+    /*
+     * the frames of a list of image files
+     */
+    private class FileFrames extends FrameIterator {
+        private int next = 0;
+        private int width = -1;
+        private int height = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < frameFilenames.size();
+        }
+
+        @Override
+        public Frame next() {
+            if(!hasNext())
+                throw new NoSuchElementException();
+            String filename = frameFilenames.get(next++);
+            try {
+                BufferedImage picture = ImageIO.read(new File(filename));
+                if(picture == null)
+                    throw new IOException("Unsupported image format: " + filename);
+                if(width == -1) {
+                    width = picture.getWidth();
+                    height = picture.getHeight();
+                } else if(picture.getWidth() != width || picture.getHeight() != height) {
+                    throw new IOException("Frame dimensions differ from the first frame: " + filename);
+                }
+                int[] pixels = picture.getRGB(0, 0, width, height, null, 0, width);
+                return toFrame(picture, pixels, new Rectangle(0, 0, width, height), DEFAULT_DELAY_MILLIS);
+            } catch(IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    private static IIOMetadataNode findNode(IIOMetadata metadata, String format, String name) {
+        if(metadata == null)
+            return null;
+        IIOMetadataNode root = (IIOMetadataNode)metadata.getAsTree(format);
+        for(org.w3c.dom.Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if(child.getNodeName().equals(name))
+                return (IIOMetadataNode)child;
+        }
+        return null;
+    }
+
+    private static int intAttribute(IIOMetadataNode node, String name) {
+        return Integer.parseInt(node.getAttribute(name));
+    }
+}
@@ -0,0 +1,173 @@
+package image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mipmap pyramid of an image's greyscale brightness.
+ * Level k holds the average brightness of every 2^k*2^k tile of the image, level 1 is
+ * built from the pixels and every coarser level is a 2*2 reduction of the previous one.
+ * Built once, after which reading the tiles of any level needs no pixel work at all.
+ * Tiles lying entirely in the margins of a padded image aren't stored, so the pyramid's
+ * memory and build time scale with the content of the image rather than with its padding.
+ * @author eran_turgeman
+ */
+public class BrightnessPyramid {
+    private static final int FIRST_LEVEL = 1;
+
+    // levels.get(i) is level i+FIRST_LEVEL
+    private final List<Level> levels = new ArrayList<>();
+    private final int width;
+    private final int height;
+    private final int contentX;
+    private final int contentY;
+    private final int contentWidth;
+    private final int contentHeight;
+    private final float marginBrightness;
+
+    /**
+     * Builds the pyramid of the given image, with a level for every power of two
+     * tile size that evenly divides both dimensions of the image.
+     * @param image the image to build the pyramid for
+     * @return the brightness pyramid of the image
+     */
+    public static BrightnessPyramid of(Image image) {
+        return new BrightnessPyramid(image);
+    }
+
+    private BrightnessPyramid(Image image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        if(image instanceof PaddedImage) {
+            PaddedImage padded = (PaddedImage)image;
+            contentX = padded.getContentX();
+            contentY = padded.getContentY();
+            contentWidth = padded.getContentWidth();
+            contentHeight = padded.getContentHeight();
+            marginBrightness = (float)(SummedAreaTable.grey(padded.getMarginArgb()) /
+                                       SummedAreaTable.MAX_PIXEL_GREY);
+        } else {
+            contentX = 0;
+            contentY = 0;
+            contentWidth = width;
+            contentHeight = height;
+            marginBrightness = 0;
+        }
+        if(width % 2 != 0 || height % 2 != 0)
+            return;
+
+        levels.add(buildFirstLevel(image));
+        for(int k = FIRST_LEVEL; getLevelWidth(k) % 2 == 0 && getLevelHeight(k) % 2 == 0; k++) {
+            levels.add(reduce(k));
+        }
+    }
+
+    /**
+     * The level whose tiles are of the given size.
+     * @param tilePixels the width and height, in pixels, of the tiles
+     * @return the matching level, or -1 if the pyramid has no level of that tile size
+     */
+    public int levelOfTileSize(int tilePixels) {
+        if(tilePixels < 2 || Integer.bitCount(tilePixels) != 1)
+            return -1;
+        int level = Integer.numberOfTrailingZeros(tilePixels);
+        return level - FIRST_LEVEL < levels.size() ? level : -1;
+    }
+
+    /**
+     * @param level a level of the pyramid
+     * @return the number of tiles in every row of the level
+     */
+    public int getLevelWidth(int level) {
+        return width >> level;
+    }
+
+    /**
+     * @param level a level of the pyramid
+     * @return the number of tile rows in the level
+     */
+    public int getLevelHeight(int level) {
+        return height >> level;
+    }
+
+    /**
+     * The average brightness, in the range [0,1], of a tile.
+     * @param level a level of the pyramid, as returned from levelOfTileSize
+     * @param col the column of the tile in the level
+     * @param row the row of the tile in the level
+     * @return the average brightness of the tile's pixels
+     */
+    public double tileBrightness(int level, int col, int row) {
+        if(col < 0 || row < 0 || col >= getLevelWidth(level) || row >= getLevelHeight(level))
+            throw new IndexOutOfBoundsException();
+        return levels.get(level - FIRST_LEVEL).get(col, row);
+    }
+
+    /*
+     * averages every 2*2 block of pixels of the image which touches its content
+     */
+    private Level buildFirstLevel(Image image) {
+        Level level = new Level(FIRST_LEVEL);
+        int firstX = level.firstCol * 2, rowPixels = level.cols * 2;
+        int[] top = new int[rowPixels], bottom = new int[rowPixels];
+        for(int row = level.firstRow; row < level.firstRow + level.rows; row++) {
+            image.getRowArgb(row * 2, firstX, rowPixels, top, 0);
+            image.getRowArgb(row * 2 + 1, firstX, rowPixels, bottom, 0);
+            for(int i = 0; i < level.cols; i++) {
+                int x = i * 2;
+                long sum = SummedAreaTable.grey(top[x]) + SummedAreaTable.grey(top[x + 1]) +
+                           SummedAreaTable.grey(bottom[x]) + SummedAreaTable.grey(bottom[x + 1]);
+                level.set(level.firstCol + i, row, (float)(sum / (4 * SummedAreaTable.MAX_PIXEL_GREY)));
+            }
+        }
+        return level;
+    }
+
+    /*
+     * builds the level above the given one by averaging every 2*2 block of its tiles
+     */
+    private Level reduce(int finerLevel) {
+        Level finer = levels.get(finerLevel - FIRST_LEVEL);
+        Level level = new Level(finerLevel + 1);
+        for(int row = level.firstRow; row < level.firstRow + level.rows; row++) {
+            for(int col = level.firstCol; col < level.firstCol + level.cols; col++) {
+                int x = 2 * col, y = 2 * row;
+                level.set(col, row,
+                        (finer.get(x, y) + finer.get(x + 1, y) + finer.get(x, y + 1) + finer.get(x + 1, y + 1)) / 4);
+            }
+        }
+        return level;
+    }
+
+    /*
+     * the tiles of a level which touch the content of the image, any other tile is all margin
+     */
+    private class Level {
+        private final int firstCol;
+        private final int firstRow;
+        private final int cols;
+        private final int rows;
+        private final float[] tiles;
+
+        Level(int level) {
+            int tilePixels = 1 << level;
+            firstCol = contentX / tilePixels;
+            firstRow = contentY / tilePixels;
+            cols = (contentX + contentWidth + tilePixels - 1) / tilePixels - firstCol;
+            rows = (contentY + contentHeight + tilePixels - 1) / tilePixels - firstRow;
+            tiles = new float[cols * rows];
+        }
+
+        float get(int col, int row) {
+            col -= firstCol;
+            row -= firstRow;
+            if(col < 0 || row < 0 || col >= cols || row >= rows)
+                return marginBrightness;
+            return tiles[row * cols + col];
+        }
+
+        void set(int col, int row, float brightness) {
+            tiles[(row - firstRow) * cols + col - firstCol] = brightness;
+        }
+    }
+}
@@ -4,59 +4,128 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Objects;
 
 /**
  * A package-private class of the package image.
+ * The pixels are kept as packed ARGB ints in a single row-major array, so an image
+ * costs 4 bytes per pixel and a single allocation.
+ * The image is padded to power of two dimensions, but the padding is virtual: only the
+ * original pixels are stored and margin pixels are answered arithmetically.
  * @author Dan Nirel
  */
-class FileImage implements Image {
+class FileImage implements PaddedImage {
     private static final Color DEFAULT_COLOR = Color.WHITE;
 
-    private final Color[][] pixelArray;
+    private final int width;
+    private final int height;
+    private final int origWidth;
+    private final int origHeight;
+    private final int xMargin;
+    private final int yMargin;
+    private final int[] pixelArray;
 
     public FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
-        int origWidth = im.getWidth(), origHeight = im.getHeight();
+        this(read(filename));
+    }
+
+    /**
+     * Constructor of an image copying the pixels of a decoded image
+     * @param im the decoded image
+     */
+    FileImage(java.awt.image.BufferedImage im) {
+        this(im.getRGB(0, 0, im.getWidth(), im.getHeight(), null, 0, im.getWidth()), im.getWidth(), im.getHeight());
+    }
 
-        int newWidth = getPowerOfTwoGreaterThan(origWidth);
-        int newHeight = getPowerOfTwoGreaterThan(origHeight);
+    /**
+     * Constructor of an image wrapping a raster of ARGB pixels, row after row, without copying it.
+     * Changes to the raster show in the image.
+     * @param pixels the raster
+     * @param contentWidth the width of the raster
+     * @param contentHeight the height of the raster
+     */
+    FileImage(int[] pixels, int contentWidth, int contentHeight) {
+        origWidth = contentWidth;
+        origHeight = contentHeight;
 
-        pixelArray = new Color[newHeight][newWidth];
-        float xMargin = (newWidth-origWidth)/2.0f;
-        float yMargin = (newHeight-origHeight)/2.0f;
+        width = getPowerOfTwoGreaterThan(origWidth);
+        height = getPowerOfTwoGreaterThan(origHeight);
 
-        for(int y = 0 ; y < pixelArray.length ; y++) {
-            for(int x = 0 ; x < pixelArray[y].length ; x++) {
-                //if this pixel is not in the margins, take value from image
-                if(x >= (int)Math.floor(xMargin) && x < pixelArray[y].length-Math.ceil(xMargin) &&
-                   y >= (int)Math.floor(yMargin) && y < pixelArray.length-Math.ceil(yMargin)) {
-                pixelArray[y][x] = new Color(im.getRGB(
-                        x-(int)Math.floor(xMargin),
-                        y-(int)Math.floor(yMargin)));
-                }
-                else { //otherwise, color with default background color
-                    pixelArray[y][x] = DEFAULT_COLOR;
-                }
-            }
-        }
+        xMargin = (int)Math.floor((width-origWidth)/2.0f);
+        yMargin = (int)Math.floor((height-origHeight)/2.0f);
+        pixelArray = pixels;
     }
 
     @Override
     public int getWidth() {
-        return pixelArray[0].length;
+        return width;
     }
 
     @Override
     public int getHeight() {
-        return pixelArray.length;
+        return height;
     }
 
     @Override
     public Color getPixel(int x, int y) {
-        return pixelArray[y][x]; //if invalid indices, let the array throw the exception
+        return new Color(getPixelArgb(x, y));
+    }
+
+    @Override
+    public int getPixelArgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int contentX = x-xMargin, contentY = y-yMargin;
+        //if this pixel is in the margins, it has the default background color
+        if(contentX < 0 || contentX >= origWidth || contentY < 0 || contentY >= origHeight)
+            return DEFAULT_COLOR.getRGB();
+        return pixelArray[contentY*origWidth+contentX] | OPAQUE_ALPHA;
+    }
+
+    @Override
+    public void getRowArgb(int y, int x, int length, int[] dest, int offset) {
+        Objects.checkIndex(y, height);
+        Objects.checkFromIndexSize(x, length, width);
+        Objects.checkFromIndexSize(offset, length, dest.length);
+        int contentY = y-yMargin;
+        boolean isContentRow = contentY >= 0 && contentY < origHeight;
+        PaddedImage.copyPaddedRow(isContentRow ? pixelArray : null, contentY*origWidth, xMargin, origWidth,
+                DEFAULT_COLOR.getRGB(), x, length, dest, offset);
+    }
+
+    @Override
+    public int getContentX() {
+        return xMargin;
+    }
+
+    @Override
+    public int getContentY() {
+        return yMargin;
+    }
+
+    @Override
+    public int getContentWidth() {
+        return origWidth;
+    }
+
+    @Override
+    public int getContentHeight() {
+        return origHeight;
+    }
+
+    @Override
+    public int getMarginArgb() {
+        return DEFAULT_COLOR.getRGB();
+    }
+
+    private static java.awt.image.BufferedImage read(String filename) throws IOException {
+        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
+        if(im == null)
+            throw new IOException("Unsupported image format: " + filename);
+        return im;
     }
 
-    private static int getPowerOfTwoGreaterThan(int num) {
+    static int getPowerOfTwoGreaterThan(int num) {
         return (int)Math.pow(2, Math.ceil(Math.log(num)/Math.log(2)));
     }
 }
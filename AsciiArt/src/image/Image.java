@@ -1,32 +1,145 @@
 package image;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.Objects;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Facade for the image module and an interface representing an image.
  * @author Dan Nirel
  */
-public interface Image {
+public interface Image extends Closeable {
     Color getPixel(int x, int y);
+
+    /**
+     * The alpha of every pixel getPixelArgb answers. Images are opaque, like the white margins
+     * they're padded with, whatever the alpha of the file they were read from.
+     */
+    int OPAQUE_ALPHA = 0xFF000000;
+
+    /**
+     * The color of a pixel packed as an ARGB int, in the format of {@link Color#getRGB()}.
+     * The alpha is always that of OPAQUE_ALPHA, the same as the alpha of getPixel's colors.
+     * Prefer this over getPixel in hot loops, since raster-backed images answer it
+     * without allocating a Color.
+     */
+    default int getPixelArgb(int x, int y) {
+        return getPixel(x, y).getRGB() | OPAQUE_ALPHA;
+    }
+
     int getWidth();
     int getHeight();
 
+    /**
+     * Receives pixels as packed ARGB ints, together with their coordinates.
+     */
+    @FunctionalInterface
+    interface PixelVisitor {
+        void visit(int x, int y, int argb);
+    }
+
+    /**
+     * Reads a run of pixels of a row as packed ARGB ints, in the format of getPixelArgb.
+     * Raster-backed images copy the run in bulk, so prefer this over getPixelArgb when
+     * reading whole rows.
+     * @param y the row to read
+     * @param x the first column of the run
+     * @param length the number of pixels to read
+     * @param dest the array to read into
+     * @param offset the index in dest of the first pixel
+     * @throws IndexOutOfBoundsException if the run isn't inside the image or dest is too short
+     */
+    default void getRowArgb(int y, int x, int length, int[] dest, int offset) {
+        Objects.checkIndex(y, getHeight());
+        Objects.checkFromIndexSize(x, length, getWidth());
+        Objects.checkFromIndexSize(offset, length, dest.length);
+        for(int i = 0; i < length; i++) {
+            dest[offset + i] = getPixelArgb(x + i, y);
+        }
+    }
+
+    /**
+     * Visits every pixel of the image, row after row. The rows are read in bulk with getRowArgb
+     * into a single buffer, so no object is allocated per pixel.
+     * @param visitor receives the coordinates and color of every pixel
+     */
+    default void forEachPixel(PixelVisitor visitor) {
+        forEachPixel(0, 0, getWidth(), getHeight(), visitor);
+    }
+
+    /**
+     * Visits every pixel of a rectangle of the image, row after row, without allocating per pixel.
+     * @param x the left column of the rectangle
+     * @param y the top row of the rectangle
+     * @param width the width of the rectangle
+     * @param height the height of the rectangle
+     * @param visitor receives the coordinates and color of every pixel
+     * @throws IndexOutOfBoundsException if the rectangle isn't inside the image
+     */
+    default void forEachPixel(int x, int y, int width, int height, PixelVisitor visitor) {
+        Objects.checkFromIndexSize(x, width, getWidth());
+        Objects.checkFromIndexSize(y, height, getHeight());
+        int[] row = new int[width];
+        for(int j = y; j < y + height; j++) {
+            getRowArgb(j, x, width, row, 0);
+            for(int i = 0; i < width; i++) {
+                visitor.visit(x + i, j, row[i]);
+            }
+        }
+    }
+
+    /**
+     * Whether the pixels of the image are decoded on demand rather than held in memory.
+     * Such images should be read top to bottom, and not indexed as a whole.
+     */
+    default boolean isStreamed() {
+        return false;
+    }
+
+    /**
+     * Releases what the image holds open, such as the file a streamed image decodes its pixels from.
+     * The pixels of a closed streamed image can't be read anymore. Images held in memory hold nothing
+     * open, so closing them does nothing.
+     */
+    @Override
+    default void close() {
+    }
+
     /**
      * Open an image from file. Each dimensions of the returned image is guaranteed
      * to be a power of 2, but the dimensions may be different.
+     * Images larger than 2^26 pixels are opened as streamed images, which decode
+     * their pixels a band of rows at a time and keep the file open until they're closed.
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
         try {
+            if(StreamedFileImage.countPixels(filename) > StreamedFileImage.MAX_IN_MEMORY_PIXELS) {
+                return new StreamedFileImage(filename, StreamedFileImage.DEFAULT_BAND_ROWS);
+            }
             return new FileImage(filename);
         } catch(IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Wraps an image already in memory, such as one drawn by a program. The returned image
+     * is padded to power of 2 dimensions just like the images opened with fromFile.
+     * @param image the image to wrap, its pixels are copied
+     * @return an object implementing Image
+     */
+    static Image fromBufferedImage(BufferedImage image) {
+        return new FileImage(image);
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      * @return an Iterable<Color> that can be traversed with a foreach loop
@@ -48,4 +161,65 @@ public interface Image {
                 pixels,
                 pixels);
     }
+
+    /**
+     * Breaks the image down to rectangular sub-images of a specified width and height in pixels.
+     * @param width the width, in pixels, of each sub-image
+     * @param height the height, in pixels, of each sub-image
+     * @return an Iterable of the sub-images
+     */
+    default Iterable<Image> subImagesOfSize(int width, int height) {
+        return new ImageIterableProperty<>(
+                this,
+                (x,y)->new ImageView(this,x,y,width,height),
+                width,
+                height);
+    }
+
+    /**
+     * A stream of the pixels' colors packed as ARGB ints, by order (first row, second row and so on).
+     * The stream is sequential, but splits evenly by ranges of rows when made parallel.
+     * @return an IntStream of the pixels
+     */
+    default IntStream pixelArgbStream() {
+        return StreamSupport.intStream(new PixelSpliterator(this, 0, getHeight()), false);
+    }
+
+    /**
+     * A stream of the rows of the image, each read with getRowArgb into an array of its own.
+     * The stream is sequential, but splits evenly by ranges of rows when made parallel.
+     * @return a Stream of the rows, top to bottom
+     */
+    default Stream<int[]> rowStream() {
+        return StreamSupport.stream(new RowRangeSpliterator<>((col, y) -> {
+            int[] row = new int[getWidth()];
+            getRowArgb(y, 0, row.length, row, 0);
+            return row;
+        }, 1, 0, getHeight()), false);
+    }
+
+    /**
+     * A stream of the square sub-images of a specified size, in the order of squareSubImagesOfSize.
+     * Only sub-images that fit in the image entirely are included. The stream is sequential, but
+     * splits evenly by ranges of rows of sub-images when made parallel.
+     * @param pixels the width and height, in pixels, of each square sub-image
+     * @return a Stream of the sub-images
+     */
+    default Stream<Image> squareSubImageStream(int pixels) {
+        return subImageStream(pixels, pixels);
+    }
+
+    /**
+     * A stream of the rectangular sub-images of a specified size, in the order of subImagesOfSize.
+     * Only sub-images that fit in the image entirely are included. The stream is sequential, but
+     * splits evenly by ranges of rows of sub-images when made parallel.
+     * @param width the width, in pixels, of each sub-image
+     * @param height the height, in pixels, of each sub-image
+     * @return a Stream of the sub-images
+     */
+    default Stream<Image> subImageStream(int width, int height) {
+        return StreamSupport.stream(new RowRangeSpliterator<>(
+                (col, row) -> new ImageView(this, col * width, row * height, width, height),
+                getWidth() / width, 0, getHeight() / height), false);
+    }
 }
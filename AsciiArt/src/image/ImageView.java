@@ -1,6 +1,7 @@
 package image;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * A package-private class of the package image.
@@ -48,6 +49,34 @@ class ImageView implements Image {
         return img.getPixel(startX+x, startY+y);
     }
 
+    @Override
+    public int getPixelArgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        return img.getPixelArgb(startX+x, startY+y);
+    }
+
+    /**
+     * Checks the run once and reads it from the underlying image in bulk
+     */
+    @Override
+    public void getRowArgb(int y, int x, int length, int[] dest, int offset) {
+        Objects.checkIndex(y, height);
+        Objects.checkFromIndexSize(x, length, width);
+        img.getRowArgb(startY+y, startX+x, length, dest, offset);
+    }
+
+    /**
+     * Checks the rectangle once and visits it on the underlying image, translating the coordinates
+     */
+    @Override
+    public void forEachPixel(int x, int y, int width, int height, PixelVisitor visitor) {
+        Objects.checkFromIndexSize(x, width, this.width);
+        Objects.checkFromIndexSize(y, height, this.height);
+        img.forEachPixel(startX+x, startY+y, width, height,
+                (imgX, imgY, argb) -> visitor.visit(imgX-startX, imgY-startY, argb));
+    }
+
     @Override
     public int getWidth() {
         return width;
@@ -0,0 +1,65 @@
+package image;
+
+import java.util.Arrays;
+
+/**
+ * A package-private interface of the package image.
+ * An image made of a rectangle of content surrounded by margins of a single color. The margins
+ * aren't stored, so the indices of the image compute their contribution arithmetically instead
+ * of reading margin pixels.
+ * @author eran_turgeman
+ */
+interface PaddedImage extends Image {
+    /**
+     * @return the left column of the content
+     */
+    int getContentX();
+
+    /**
+     * @return the top row of the content
+     */
+    int getContentY();
+
+    /**
+     * @return the width of the content, in pixels
+     */
+    int getContentWidth();
+
+    /**
+     * @return the height of the content, in pixels
+     */
+    int getContentHeight();
+
+    /**
+     * @return the color of every margin pixel, packed as an ARGB int
+     */
+    int getMarginArgb();
+
+    /**
+     * Copies a run of pixels of a row into an array, filling the margins and copying the content with
+     * its alpha made opaque, as getPixelArgb answers it.
+     * @param content the pixels of the row's content, or null if the row is in the margins
+     * @param contentOffset the index in content of the row's first content pixel
+     * @param contentX the left column of the content
+     * @param contentWidth the width of the content
+     * @param marginArgb the color of the margins
+     * @param x the first column of the run
+     * @param length the number of pixels to copy
+     * @param dest the array to copy into
+     * @param offset the index in dest of the first pixel
+     */
+    static void copyPaddedRow(int[] content, int contentOffset, int contentX, int contentWidth, int marginArgb,
+                              int x, int length, int[] dest, int offset) {
+        int from = Math.max(x, contentX), to = Math.min(x + length, contentX + contentWidth);
+        if(content == null || from >= to) {
+            Arrays.fill(dest, offset, offset + length, marginArgb);
+            return;
+        }
+        Arrays.fill(dest, offset, offset + from - x, marginArgb);
+        int contentFrom = contentOffset + from - contentX, destFrom = offset + from - x;
+        for(int i = 0; i < to - from; i++) {
+            dest[destFrom + i] = content[contentFrom + i] | OPAQUE_ALPHA;
+        }
+        Arrays.fill(dest, offset + to - x, offset + length, marginArgb);
+    }
+}
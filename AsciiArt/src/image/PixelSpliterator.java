@@ -0,0 +1,93 @@
+package image;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A package-private class of the package image.
+ * A spliterator over the packed ARGB pixels of a range of rows of an image, in row-major order.
+ * Rows are read in bulk with getRowArgb into a buffer of the spliterator, so no object is created
+ * per pixel, and it splits by halving its range of rows like RowRangeSpliterator.
+ * @see RowRangeSpliterator
+ * @author eran_turgeman
+ */
+class PixelSpliterator implements Spliterator.OfInt {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final Image image;
+    private final int width;
+    private int[] row;
+    private int y;
+    private int x;
+    private int endY;
+
+    /**
+     * Constructor
+     * @param image the image to traverse
+     * @param fromY the first row to traverse
+     * @param toY the row after the last one to traverse
+     */
+    PixelSpliterator(Image image, int fromY, int toY) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.y = fromY;
+        this.endY = width == 0 ? fromY : toY;
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        if(y >= endY)
+            return false;
+        if(x == 0)
+            readRow();
+        action.accept(row[x]);
+        if(++x == width) {
+            x = 0;
+            y++;
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        for(; y < endY; y++) {
+            if(x == 0)
+                readRow();
+            for(; x < width; x++) {
+                action.accept(row[x]);
+            }
+            x = 0;
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt trySplit() {
+        if(endY - y < 2)
+            return null;
+        // the prefix, which takes a partly traversed row along, is returned and this keeps the rest
+        int mid = y + (endY - y) / 2;
+        PixelSpliterator prefix = new PixelSpliterator(image, y, mid);
+        prefix.row = row;
+        prefix.x = x;
+        row = null;
+        y = mid;
+        x = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (long)(endY - y) * width - x;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private void readRow() {
+        if(row == null)
+            row = new int[width];
+        image.getRowArgb(y, 0, width, row, 0);
+    }
+}
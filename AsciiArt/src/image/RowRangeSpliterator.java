@@ -0,0 +1,88 @@
+package image;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A package-private class of the package image.
+ * A spliterator over a grid of cells, such as the tiles or the rows of an image, traversed row after
+ * row. It splits by halving its range of rows, so every part is exactly sized and the parts of a
+ * parallel stream get even shares of the image.
+ * @author eran_turgeman
+ */
+class RowRangeSpliterator<T> implements Spliterator<T> {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final Cell<T> cell;
+    private final int cols;
+    private int row;
+    private int col;
+    private int endRow;
+
+    /**
+     * Creates the value of a cell of the grid
+     */
+    @FunctionalInterface
+    interface Cell<T> {
+        T at(int col, int row);
+    }
+
+    /**
+     * Constructor
+     * @param cell creates the value of every cell
+     * @param cols the number of cells in a row of the grid
+     * @param fromRow the first row to traverse
+     * @param toRow the row after the last one to traverse
+     */
+    RowRangeSpliterator(Cell<T> cell, int cols, int fromRow, int toRow) {
+        this.cell = cell;
+        this.cols = cols;
+        this.row = fromRow;
+        this.endRow = cols == 0 ? fromRow : toRow;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if(row >= endRow)
+            return false;
+        action.accept(cell.at(col, row));
+        if(++col == cols) {
+            col = 0;
+            row++;
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        for(; row < endRow; row++) {
+            for(; col < cols; col++) {
+                action.accept(cell.at(col, row));
+            }
+            col = 0;
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if(endRow - row < 2)
+            return null;
+        // the prefix, which takes a partly traversed row along, is returned and this keeps the rest
+        int mid = row + (endRow - row) / 2;
+        RowRangeSpliterator<T> prefix = new RowRangeSpliterator<>(cell, cols, row, mid);
+        prefix.col = col;
+        row = mid;
+        col = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (long)(endRow - row) * cols - col;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
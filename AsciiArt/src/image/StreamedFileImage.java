@@ -0,0 +1,535 @@
+package image;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A package-private class of the package image.
+ * An image whose pixels are decoded lazily, a band of rows at a time. Only the last few decoded bands
+ * are kept in memory, so the image should be read top to bottom. Like FileImage, it is padded with
+ * white margins to power of two dimensions, but the margins are never stored.
+ * Most formats can't decode a band without decoding every row above it, so the rows are decoded in a
+ * single pass from the top, on a thread of its own, and handed over as they're read. Reading a band
+ * above the last one read starts the pass over. Formats that allow random access, such as TIFF, decode
+ * every band directly instead. Images stored in several passes, such as interlaced PNGs, and images
+ * whose reader doesn't report its rows in order are decoded whole on first access.
+ * @author eran_turgeman
+ */
+class StreamedFileImage implements PaddedImage {
+    // larger images are streamed by Image.fromFile instead of being held in memory
+    static final long MAX_IN_MEMORY_PIXELS = 1L << 26;
+    static final int DEFAULT_BAND_ROWS = 256;
+    private static final int DEFAULT_COLOR = Color.WHITE.getRGB();
+    private static final int WINDOW_BANDS = 2;
+    // the rows the reader decodes into before they're handed over
+    private static final int DESTINATION_ROWS = 16;
+    // rows of a single read are limited, so their offsets in the destination fit an int
+    private static final int MAX_READ_ELEMENTS = Integer.MAX_VALUE / 2;
+    private static final int[] END_OF_PASS = new int[0];
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int bandRows;
+    private final int width;
+    private final int height;
+    private final int origWidth;
+    private final int origHeight;
+    private final int xMargin;
+    private final int yMargin;
+    private final boolean isRandomAccessEasy;
+    // whether the rows are decoded by a pass from the top, rather than by decoding the whole image
+    private boolean isDecodedInOrder;
+    private DecodingPass pass;
+    private BufferedImage decoded;
+    // the most recently decoded bands, newest first
+    private volatile Band[] window = new Band[0];
+    private boolean isClosed;
+
+    /**
+     * Constructor. Reads only the header of the file.
+     * @param filename a path to an image file on disk
+     * @param bandRows the number of rows to decode at a time
+     * @throws IOException if the file can't be opened or no reader supports its format
+     */
+    public StreamedFileImage(String filename, int bandRows) throws IOException {
+        input = ImageIO.createImageInputStream(new File(filename));
+        if(input == null)
+            throw new IOException("Can't open " + filename);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if(!readers.hasNext()) {
+            input.close();
+            throw new IOException("No reader for " + filename);
+        }
+        reader = readers.next();
+        try {
+            reader.setInput(input, true, false);
+            origWidth = reader.getWidth(0);
+            origHeight = reader.getHeight(0);
+            isRandomAccessEasy = reader.isRandomAccessEasy(0);
+            isDecodedInOrder = !isRandomAccessEasy && countProgressiveScans(reader.getImageMetadata(0)) == 1;
+        } catch(IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        this.bandRows = bandRows;
+        width = FileImage.getPowerOfTwoGreaterThan(origWidth);
+        height = FileImage.getPowerOfTwoGreaterThan(origHeight);
+        xMargin = (width - origWidth) / 2;
+        yMargin = (height - origHeight) / 2;
+    }
+
+    /**
+     * Reads the dimensions of an image file without decoding its pixels.
+     * @param filename a path to an image file on disk
+     * @return the number of pixels in the image, or -1 if it can't be read
+     */
+    static long countPixels(String filename) {
+        try(ImageInputStream input = ImageIO.createImageInputStream(new File(filename))) {
+            if(input == null)
+                return -1;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext())
+                return -1;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return (long)reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch(IOException ioe) {
+            return -1;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getPixelArgb(x, y));
+    }
+
+    @Override
+    public int getPixelArgb(int x, int y) {
+        if(x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        int contentX = x - xMargin, contentY = y - yMargin;
+        if(contentX < 0 || contentX >= origWidth || contentY < 0 || contentY >= origHeight)
+            return DEFAULT_COLOR;
+        Band band = getBand(y / bandRows);
+        return band.pixels[(contentY - band.firstRow) * origWidth + contentX] | OPAQUE_ALPHA;
+    }
+
+    @Override
+    public void getRowArgb(int y, int x, int length, int[] dest, int offset) {
+        Objects.checkIndex(y, height);
+        Objects.checkFromIndexSize(x, length, width);
+        Objects.checkFromIndexSize(offset, length, dest.length);
+        int contentY = y - yMargin;
+        if(contentY < 0 || contentY >= origHeight) {
+            PaddedImage.copyPaddedRow(null, 0, xMargin, origWidth, DEFAULT_COLOR, x, length, dest, offset);
+            return;
+        }
+        Band band = getBand(y / bandRows);
+        PaddedImage.copyPaddedRow(band.pixels, (contentY - band.firstRow) * origWidth, xMargin, origWidth,
+                DEFAULT_COLOR, x, length, dest, offset);
+    }
+
+    @Override
+    public int getContentX() {
+        return xMargin;
+    }
+
+    @Override
+    public int getContentY() {
+        return yMargin;
+    }
+
+    @Override
+    public int getContentWidth() {
+        return origWidth;
+    }
+
+    @Override
+    public int getContentHeight() {
+        return origHeight;
+    }
+
+    @Override
+    public int getMarginArgb() {
+        return DEFAULT_COLOR;
+    }
+
+    @Override
+    public boolean isStreamed() {
+        return true;
+    }
+
+    /**
+     * Stops the decoding pass, disposes of the reader and closes the file.
+     * Decoding a band afterwards fails.
+     */
+    @Override
+    public synchronized void close() {
+        if(isClosed)
+            return;
+        isClosed = true;
+        if(pass != null)
+            pass.stop();
+        decoded = null;
+        reader.dispose();
+        try {
+            input.close();
+        } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /*
+     * returns a band from the window, decoding it if it isn't there
+     */
+    private Band getBand(int index) {
+        for(Band band: window) {
+            if(band.index == index)
+                return band;
+        }
+        synchronized(this) {
+            Band[] current = window;
+            for(Band band: current) {
+                if(band.index == index)
+                    return band;
+            }
+            Band band = decodeBand(index);
+            Band[] next = new Band[Math.min(WINDOW_BANDS, current.length + 1)];
+            next[0] = band;
+            System.arraycopy(current, 0, next, 1, next.length - 1);
+            window = next;
+            return band;
+        }
+    }
+
+    /*
+     * decodes the content rows that fall in the band of the given index
+     */
+    private Band decodeBand(int index) {
+        if(isClosed)
+            throw new IllegalStateException("The image is closed");
+        int firstRow = Math.max(0, index * bandRows - yMargin);
+        int lastRow = Math.min(origHeight, (index + 1) * bandRows - yMargin);
+        try {
+            if(isRandomAccessEasy)
+                return new Band(index, firstRow, readRegion(firstRow, lastRow));
+            if(isDecodedInOrder) {
+                if(pass == null || firstRow < pass.nextRow) {
+                    if(pass != null)
+                        pass.stop();
+                    pass = new DecodingPass(firstRow);
+                }
+                int[] pixels = pass.read(firstRow, lastRow);
+                if(pixels != null)
+                    return new Band(index, firstRow, pixels);
+                // the reader didn't hand the rows over in order, so the pass can't be trusted
+                pass.stop();
+                pass = null;
+                isDecodedInOrder = false;
+            }
+            if(decoded == null)
+                decoded = reader.read(0);
+            return new Band(index, firstRow,
+                    decoded.getRGB(0, firstRow, origWidth, lastRow - firstRow, null, 0, origWidth));
+        } catch(IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /*
+     * decodes a region of rows on its own, for formats that can seek to it
+     */
+    private int[] readRegion(int firstRow, int lastRow) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, firstRow, origWidth, lastRow - firstRow));
+        BufferedImage region = reader.read(0, param);
+        return region.getRGB(0, 0, origWidth, lastRow - firstRow, null, 0, origWidth);
+    }
+
+    /*
+     * the number of passes the image is stored in, such as the 7 of an interlaced PNG, or 1 if it's unknown
+     */
+    private static int countProgressiveScans(IIOMetadata metadata) {
+        if(metadata == null || !metadata.isStandardMetadataFormatSupported())
+            return 1;
+        org.w3c.dom.Node root = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+        for(org.w3c.dom.Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if(!node.getNodeName().equals("Compression"))
+                continue;
+            for(org.w3c.dom.Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if(child.getNodeName().equals("NumProgressiveScans"))
+                    return Integer.parseInt(((org.w3c.dom.Element)child).getAttribute("value"));
+            }
+        }
+        return 1;
+    }
+
+    /*
+     * the number of data elements in a row of a sample model, or -1 if it's of a kind whose rows
+     * can't be told apart by their offset
+     */
+    private static int scanlineStride(SampleModel sampleModel) {
+        if(sampleModel instanceof ComponentSampleModel)
+            return ((ComponentSampleModel)sampleModel).getScanlineStride();
+        if(sampleModel instanceof SinglePixelPackedSampleModel)
+            return ((SinglePixelPackedSampleModel)sampleModel).getScanlineStride();
+        if(sampleModel instanceof MultiPixelPackedSampleModel)
+            return ((MultiPixelPackedSampleModel)sampleModel).getScanlineStride();
+        return -1;
+    }
+
+    /*
+     * decoded content rows, starting at a given row of the original image
+     */
+    private static class Band {
+        private final int index;
+        private final int firstRow;
+        private final int[] pixels;
+
+        Band(int index, int firstRow, int[] pixels) {
+            this.index = index;
+            this.firstRow = firstRow;
+            this.pixels = pixels;
+        }
+    }
+
+    /*
+     * Decodes the content rows from a given row to the bottom in a single pass of the reader, on a thread
+     * of its own. The reader decodes into an image that stores only its last few rows, and every row is
+     * copied out as soon as the reader reports it, into a queue the size of a band. The reader waits
+     * while the queue is full, so the pass runs at most a band ahead of the rows that were read.
+     */
+    private class DecodingPass implements Runnable, IIOReadUpdateListener {
+        private final BlockingQueue<int[]> rows = new ArrayBlockingQueue<>(bandRows);
+        private final Thread thread;
+        // the next row read answers, only used by the threads reading the image
+        private int nextRow;
+        // the first row of the current read, and the next row it should report, only used by the pass
+        private int readRow;
+        private int reportedRow;
+        private boolean isInOrder = true;
+
+        DecodingPass(int firstRow) {
+            nextRow = firstRow;
+            readRow = firstRow;
+            thread = new Thread(this, "streamed-image-decoder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /*
+         * answers the rows from firstRow to lastRow, or null if the reader stopped handing them over in
+         * order. firstRow must not be above nextRow
+         */
+        int[] read(int firstRow, int lastRow) {
+            int[] pixels = new int[(lastRow - firstRow) * origWidth];
+            while(nextRow < lastRow) {
+                int[] row = take();
+                if(row == END_OF_PASS)
+                    return null;
+                if(nextRow >= firstRow)
+                    System.arraycopy(row, 0, pixels, (nextRow - firstRow) * origWidth, origWidth);
+                nextRow++;
+            }
+            return pixels;
+        }
+
+        /*
+         * stops the pass and waits for its thread to finish. The reader is aborted by the pass itself, when
+         * it reports its next rows, since readers such as the JPEG one can only be used by one thread at once
+         */
+        void stop() {
+            thread.interrupt();
+            boolean isInterrupted = false;
+            while(thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch(InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if(isInterrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run() {
+            reader.addIIOReadUpdateListener(this);
+            try {
+                while(isInOrder && readRow < origHeight && !Thread.currentThread().isInterrupted()) {
+                    readRows();
+                }
+            } catch(IOException | RuntimeException e) {
+                // an error of the file itself shows again when the image is decoded whole
+                isInOrder = false;
+            } finally {
+                reader.removeIIOReadUpdateListener(this);
+            }
+            if(!isInOrder) {
+                try {
+                    rows.put(END_OF_PASS);
+                } catch(InterruptedException e) {
+                    // stopped, no one is reading anymore
+                }
+            }
+        }
+
+        /*
+         * decodes the rows from readRow down, as many as the destination's offsets allow
+         */
+        private void readRows() throws IOException {
+            ImageTypeSpecifier type = reader.getImageTypes(0).next();
+            SampleModel rowModel = type.getSampleModel(origWidth, 1);
+            int stride = scanlineStride(rowModel);
+            if(stride <= 0 || rowModel.getDataType() > DataBuffer.TYPE_INT)
+                throw new IIOException("Unsupported sample model " + rowModel);
+            int readRows = Math.min(origHeight - readRow, Math.max(1, MAX_READ_ELEMENTS / stride));
+            SampleModel sampleModel = type.getSampleModel(origWidth, readRows);
+            int banks = 1;
+            if(sampleModel instanceof ComponentSampleModel) {
+                for(int bank: ((ComponentSampleModel)sampleModel).getBankIndices()) {
+                    banks = Math.max(banks, bank + 1);
+                }
+            }
+            RowRing ring = new RowRing(sampleModel.getDataType(), stride * DESTINATION_ROWS, banks);
+            BufferedImage destination = new BufferedImage(type.getColorModel(),
+                    Raster.createWritableRaster(sampleModel, ring, null),
+                    type.getColorModel().isAlphaPremultiplied(), null);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, readRow, origWidth, readRows));
+            param.setDestination(destination);
+            reportedRow = 0;
+            reader.read(0, param);
+            if(reportedRow != readRows && !Thread.currentThread().isInterrupted())
+                isInOrder = false;
+            readRow += readRows;
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width,
+                                int height, int periodX, int periodY, int[] bands) {
+            if(!isInOrder)
+                return;
+            if(minX != 0 || width != origWidth || minY != reportedRow || height > DESTINATION_ROWS
+                    || periodX != 1 || periodY != 1) {
+                isInOrder = false;
+                source.abort();
+                return;
+            }
+            try {
+                for(int y = minY; y < minY + height; y++) {
+                    rows.put(theImage.getRGB(0, y, origWidth, 1, null, 0, origWidth));
+                    reportedRow++;
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                source.abort();
+            }
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+                                         int maxPass, int minX, int minY, int periodX, int periodY,
+                                         int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+                                    int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        }
+
+        /*
+         * waits for the next row of the pass, without giving up when interrupted since the pass
+         * is always about to hand it over
+         */
+        private int[] take() {
+            boolean isInterrupted = false;
+            try {
+                while(true) {
+                    try {
+                        return rows.take();
+                    } catch(InterruptedException e) {
+                        isInterrupted = true;
+                    }
+                }
+            } finally {
+                if(isInterrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+     * The data of an image that stores only a few of its rows: the element at an offset is kept at
+     * that offset modulo the size of the ring, so every row overwrites a row a ring above it.
+     */
+    private static class RowRing extends DataBuffer {
+        private final int[][] banks;
+        private final int ringSize;
+
+        RowRing(int dataType, int ringSize, int numBanks) {
+            super(dataType, ringSize, numBanks);
+            this.ringSize = ringSize;
+            banks = new int[numBanks][ringSize];
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return banks[bank][i % ringSize];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            banks[bank][i % ringSize] = val;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package image;
+
+/**
+ * An integral image (summed-area table) of an image's greyscale brightness.
+ * Built once with a single pass over the pixels, after which the average brightness of
+ * any rectangle of the image is answered with four lookups, regardless of its size.
+ * @author eran_turgeman
+ */
+public class SummedAreaTable {
+    // the grey conversion factors (0.2126, 0.7152, 0.0722) scaled to integers, so sums are exact
+    private static final int RED_WEIGHT = 2126;
+    private static final int GREEN_WEIGHT = 7152;
+    private static final int BLUE_WEIGHT = 722;
+    static final double MAX_PIXEL_GREY = 255.0 * (RED_WEIGHT + GREEN_WEIGHT + BLUE_WEIGHT);
+
+    private final int width;
+    private final int height;
+    // the rectangle of the image which is actually indexed, the rest is margin of a single grey value
+    private final int contentX;
+    private final int contentY;
+    private final int contentWidth;
+    private final int contentHeight;
+    private final long marginGrey;
+    // (contentWidth+1)*(contentHeight+1) entries, entry (x,y) holds the grey sum of the content
+    // rectangle [0,x)*[0,y)
+    private final long[] sums;
+
+    /**
+     * Builds the table of the given image. Margins of padded images aren't indexed, their
+     * contribution to a rectangle is computed from the number of margin pixels in it.
+     * @param image the image to index
+     * @return the summed-area table of the image
+     */
+    public static SummedAreaTable of(Image image) {
+        return new SummedAreaTable(image);
+    }
+
+    private SummedAreaTable(Image image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        if(image instanceof PaddedImage) {
+            PaddedImage padded = (PaddedImage)image;
+            contentX = padded.getContentX();
+            contentY = padded.getContentY();
+            contentWidth = padded.getContentWidth();
+            contentHeight = padded.getContentHeight();
+            marginGrey = grey(padded.getMarginArgb());
+        } else {
+            contentX = 0;
+            contentY = 0;
+            contentWidth = width;
+            contentHeight = height;
+            marginGrey = 0;
+        }
+
+        int stride = contentWidth + 1;
+        sums = new long[stride * (contentHeight + 1)];
+        int[] row = new int[contentWidth];
+        for(int y = 0; y < contentHeight; y++) {
+            image.getRowArgb(contentY + y, contentX, contentWidth, row, 0);
+            long rowSum = 0;
+            int rowStart = (y + 1) * stride;
+            for(int x = 0; x < contentWidth; x++) {
+                rowSum += grey(row[x]);
+                sums[rowStart + x + 1] = sums[rowStart - stride + x + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * The average brightness, in the range [0,1], of a rectangle of the image.
+     * @param x the left column of the rectangle
+     * @param y the top row of the rectangle
+     * @param width the width of the rectangle, in pixels
+     * @param height the height of the rectangle, in pixels
+     * @return the average brightness of the pixels in the rectangle
+     */
+    public double averageBrightness(int x, int y, int width, int height) {
+        if(x < 0 || y < 0 || width <= 0 || height <= 0 ||
+           x + width > this.width || y + height > this.height)
+            throw new IndexOutOfBoundsException();
+        long area = (long)width * height;
+        //the part of the rectangle inside the content, in content coordinates
+        int left = Math.max(x, contentX) - contentX;
+        int right = Math.min(x + width, contentX + contentWidth) - contentX;
+        int top = Math.max(y, contentY) - contentY;
+        int bottom = Math.min(y + height, contentY + contentHeight) - contentY;
+        long sum = 0, contentArea = 0;
+        if(left < right && top < bottom) {
+            int stride = contentWidth + 1;
+            sum = sums[bottom * stride + right] - sums[bottom * stride + left] -
+                  sums[top * stride + right] + sums[top * stride + left];
+            contentArea = (long)(right - left) * (bottom - top);
+        }
+        sum += (area - contentArea) * marginGrey;
+        return sum / (MAX_PIXEL_GREY * area);
+    }
+
+    /*
+     * the weighted grey value of a packed ARGB pixel, in the range [0, MAX_PIXEL_GREY]
+     */
+    static int grey(int argb) {
+        return ((argb >> 16) & 0xFF) * RED_WEIGHT +
+               ((argb >> 8) & 0xFF) * GREEN_WEIGHT +
+               (argb & 0xFF) * BLUE_WEIGHT;
+    }
+}
@@ -0,0 +1,36 @@
+package ascii_art;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BatchConverter's choice of the output file of every image.
+ * @author eran_turgeman
+ */
+class BatchConverterTest {
+    @Test
+    void uniqueNamesDropTheirExtension() {
+        assertEquals(List.of("a.html", "b.html"),
+                BatchConverter.outputNames(List.of(Path.of("a.png"), Path.of("b.jpg")), false));
+        assertEquals(List.of("a.html.gz"), BatchConverter.outputNames(List.of(Path.of("a.png")), true));
+    }
+
+    @Test
+    void namesSharedWithoutTheExtensionKeepIt() {
+        assertEquals(List.of("a.png.html", "a.jpg.html", "b.html"),
+                BatchConverter.outputNames(List.of(Path.of("a.png"), Path.of("a.jpg"), Path.of("b.png")), false));
+        assertEquals(List.of("a.png.html", "A.PNG-2.html"),
+                BatchConverter.outputNames(List.of(Path.of("a.png"), Path.of("A.PNG")), false));
+    }
+
+    @Test
+    void equalNamesOfDifferentDirectoriesAreNumbered() {
+        assertEquals(List.of("a.png.html", "a.png-2.html", "a.png-3.html"),
+                BatchConverter.outputNames(List.of(Path.of("x", "a.png"), Path.of("y", "a.png"),
+                        Path.of("z", "a.png")), false));
+    }
+}
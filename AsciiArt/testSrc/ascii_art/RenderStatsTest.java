@@ -0,0 +1,57 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.ConversionStats;
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of RenderStats, checking the breakdown of the last render and the totals it reports.
+ * @author eran_turgeman
+ */
+class RenderStatsTest {
+    @Test
+    void totalsAddUpEveryRender() {
+        RenderStats stats = new RenderStats();
+        assertEquals("No render yet", stats.report());
+
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(
+                Image.fromBufferedImage(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB)), "Courier new");
+        Character[] charSet = {'a', 'b', 'c'};
+        matcher.chooseChars(16, charSet);
+        ConversionStats cold = matcher.getLastStats();
+        matcher.chooseChars(16, charSet);
+        ConversionStats warm = matcher.getLastStats();
+        assertEquals(256, cold.getComputedTiles());
+        assertEquals(0, warm.getComputedTiles());
+
+        stats.record(16, cold, 2000000, 1000, new RenderEvent());
+        stats.record(16, warm, 500000, -1, new RenderEvent());
+        String[] lines = stats.report().split("\\R");
+        assertEquals(14, lines.length);
+        assertEquals("Last render, 16 chars in row:", lines[0]);
+        assertLine("output", 0.5, lines[4]);
+        assertEquals(String.format("  256 tiles (0 computed), cache %d hits / %d misses, %d glyphs rendered, " +
+                "unknown bytes written", warm.getCacheHits(), warm.getCacheMisses(), warm.getRenderedGlyphs()),
+                lines[6]);
+        // the unknown byte count of the last render adds nothing to the total
+        assertEquals("Totals of 2 renders:", lines[7]);
+        assertLine("output", 2.5, lines[11]);
+        assertEquals(String.format("  512 tiles (256 computed), cache %d hits / %d misses, %d glyphs rendered, " +
+                "1000 bytes written", cold.getCacheHits() + warm.getCacheHits(),
+                cold.getCacheMisses() + warm.getCacheMisses(), cold.getRenderedGlyphs() + warm.getRenderedGlyphs()),
+                lines[13]);
+        double total = (cold.getGlyphNanos() + cold.getBrightnessNanos() + cold.getMatchNanos() + 2000000 +
+                warm.getGlyphNanos() + warm.getBrightnessNanos() + warm.getMatchNanos() + 500000) / 1e6;
+        assertLine("total", total, lines[12]);
+    }
+
+    private static void assertLine(String phase, double millis, String line) {
+        assertTrue(line.trim().startsWith(phase + " "), line);
+        assertEquals(String.format("%.3f ms", millis), line.substring(line.indexOf(phase) + phase.length()).trim());
+    }
+}
@@ -0,0 +1,126 @@
+package ascii_art.img_to_char;
+
+import image.Animation;
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of AnimationCharMatcher, converting small frames of flat grey tiles and comparing them to still
+ * conversions of the same frames.
+ * @author eran_turgeman
+ */
+class AnimationCharMatcherTest {
+    private static final String FONT = "Courier new";
+    private static final int TILE = 4;
+    private static final int TILES_IN_ROW = 8;
+    private static final Character[] CHAR_SET = CharSets.of(" .:-=+*#%@");
+
+    @Test
+    void onlyTheChangedTilesAreComputed() throws IOException {
+        int[][] greys = randomGreys(1);
+        greys[3][5] = 0;
+        BufferedImage first = tiles(greys);
+        // a single tile of the fourth row turns from black to white
+        greys[3][5] = 255;
+        BufferedImage second = tiles(greys);
+        // then nothing changes, then every tile of the seventh row changes
+        for(int j = 0; j < TILES_IN_ROW; j++) {
+            greys[6][j] = 255 - greys[6][j];
+        }
+        BufferedImage fourth = tiles(greys);
+        List<String> files = List.of(write(first), write(second), write(second), write(fourth));
+
+        AnimationCharMatcher matcher = new AnimationCharMatcher(Animation.fromFrameFiles(files), FONT);
+        List<char[][]> frames = new ArrayList<>();
+        List<Long> computed = new ArrayList<>(), reused = new ArrayList<>();
+        matcher.chooseChars(TILES_IN_ROW, CHAR_SET, (chars, delayMillis) -> {
+            frames.add(chars);
+            computed.add(matcher.getComputedTiles());
+            reused.add(matcher.getReusedTiles());
+        });
+        assertEquals(4, frames.size());
+        assertEquals(List.of(64L, 65L, 65L, 73L), computed);
+        assertEquals(List.of(0L, 63L, 127L, 183L), reused);
+
+        // the tiles that didn't change keep their chars
+        char[][] kept = new char[TILES_IN_ROW][];
+        for(int i = 0; i < kept.length; i++) {
+            kept[i] = frames.get(0)[i].clone();
+        }
+        assertNotEquals(kept[3][5], frames.get(1)[3][5]);
+        kept[3][5] = frames.get(1)[3][5];
+        assertArrayEquals(kept, frames.get(1));
+        assertArrayEquals(frames.get(1), frames.get(2));
+        for(int i = 0; i < frames.get(3).length; i++) {
+            if(i != 6) {
+                assertArrayEquals(frames.get(2)[i], frames.get(3)[i], "row " + i);
+            }
+        }
+        // and every frame is the picture of a still conversion of it
+        for(int i = 0; i < files.size(); i++) {
+            Image image = Image.fromFile(files.get(i));
+            assertArrayEquals(new BrightnessImgCharMatcher(image, FONT).chooseChars(TILES_IN_ROW, CHAR_SET),
+                    frames.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void framesMatchStillConversions() throws IOException {
+        List<String> files = new ArrayList<>();
+        for(int seed = 2; seed < 6; seed++) {
+            files.add(write(tiles(randomGreys(seed))));
+        }
+        List<char[][]> frames = new ArrayList<>();
+        new AnimationCharMatcher(Animation.fromFrameFiles(files), FONT)
+                .chooseChars(TILES_IN_ROW, CHAR_SET, (chars, delayMillis) -> frames.add(chars));
+        assertEquals(files.size(), frames.size());
+        for(int i = 0; i < files.size(); i++) {
+            Image image = Image.fromFile(files.get(i));
+            assertArrayEquals(new BrightnessImgCharMatcher(image, FONT).chooseChars(TILES_IN_ROW, CHAR_SET),
+                    frames.get(i), "frame " + i);
+        }
+    }
+
+    private static int[][] randomGreys(long seed) {
+        Random random = new Random(seed);
+        int[][] greys = new int[TILES_IN_ROW][TILES_IN_ROW];
+        for(int[] row: greys) {
+            for(int j = 0; j < row.length; j++) {
+                row[j] = random.nextInt(256);
+            }
+        }
+        return greys;
+    }
+
+    /*
+     * a picture of flat grey tiles, so a tile's brightness is the same whichever way it's averaged
+     */
+    private static BufferedImage tiles(int[][] greys) {
+        BufferedImage image = new BufferedImage(TILES_IN_ROW * TILE, greys.length * TILE,
+                BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < image.getHeight(); y++) {
+            for(int x = 0; x < image.getWidth(); x++) {
+                int grey = greys[y / TILE][x / TILE];
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        return image;
+    }
+
+    private static String write(BufferedImage pixels) throws IOException {
+        File file = File.createTempFile("frame", ".png");
+        file.deleteOnExit();
+        ImageIO.write(pixels, "png", file);
+        return file.getPath();
+    }
+}
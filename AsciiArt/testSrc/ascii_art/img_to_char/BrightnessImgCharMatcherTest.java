@@ -0,0 +1,132 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BrightnessImgCharMatcher, checking the cells it tiles the image into, and that converting on a
+ * pool of any size or after preparing a resolution gives the pictures of a conversion on the calling thread.
+ * @author eran_turgeman
+ */
+class BrightnessImgCharMatcherTest {
+    private static final String FONT = "Courier new";
+
+    @Test
+    void poolsOfAnySizeGiveTheSamePicture() {
+        Image image = ConversionProgressTest.randomImage(200, 300, 7);
+        Character[] charSet = CharSets.range(' ', '~');
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool several = new ForkJoinPool(5);
+        try {
+            BrightnessImgCharMatcher sequential = new BrightnessImgCharMatcher(image, FONT, null);
+            BrightnessImgCharMatcher singleThreaded = new BrightnessImgCharMatcher(image, FONT, single);
+            BrightnessImgCharMatcher multiThreaded = new BrightnessImgCharMatcher(image, FONT, several);
+            // square tiles of the brightness pyramid, and console cells of the summed-area table
+            for(int charsInRow: new int[]{16, 32, 64, 128}) {
+                for(double cellAspect: new double[]{1, 2}) {
+                    String resolution = charsInRow + " chars in a row, cells of aspect " + cellAspect;
+                    char[][] expected = sequential.chooseChars(charsInRow, cellAspect, charSet);
+                    assertArrayEquals(expected, singleThreaded.chooseChars(charsInRow, cellAspect, charSet),
+                            resolution);
+                    assertArrayEquals(expected, multiThreaded.chooseChars(charsInRow, cellAspect, charSet),
+                            resolution);
+                    int[][] colors = sequential.chooseColors(charsInRow, cellAspect);
+                    assertArrayEquals(colors, singleThreaded.chooseColors(charsInRow, cellAspect), resolution);
+                    assertArrayEquals(colors, multiThreaded.chooseColors(charsInRow, cellAspect), resolution);
+                }
+            }
+        } finally {
+            single.shutdown();
+            several.shutdown();
+        }
+    }
+
+    @Test
+    void consoleCellsAreAsTallAsTheirAspect() {
+        Image image = ConversionProgressTest.randomImage(128, 128, 8);
+        Character[] charSet = CharSets.range(' ', '~');
+        CharLookupTable charLookup = CharLookupTable.of(charSet, FONT);
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT);
+        // cells 8 pixels wide are 16 pixels tall, or 14 pixels tall leaving the 2 bottom rows out
+        for(double cellAspect: new double[]{2, 1.8}) {
+            int cellHeight = (int)Math.round(8 * cellAspect);
+            char[][] chars = matcher.chooseChars(16, cellAspect, charSet);
+            int[][] colors = matcher.chooseColors(16, cellAspect);
+            assertEquals(128 / cellHeight, chars.length);
+            assertEquals(chars.length, colors.length);
+            for(int i = 0; i < chars.length; i++) {
+                assertEquals(16, chars[i].length);
+                for(int j = 0; j < chars[i].length; j++) {
+                    long[] sums = new long[3];
+                    for(int y = i * cellHeight; y < (i + 1) * cellHeight; y++) {
+                        for(int x = j * 8; x < (j + 1) * 8; x++) {
+                            int pixel = image.getPixelArgb(x, y);
+                            sums[0] += pixel >> 16 & 0xFF;
+                            sums[1] += pixel >> 8 & 0xFF;
+                            sums[2] += pixel & 0xFF;
+                        }
+                    }
+                    double pixels = 8.0 * cellHeight;
+                    int color = (int)Math.round(sums[0] / pixels) << 16 | (int)Math.round(sums[1] / pixels) << 8 |
+                                (int)Math.round(sums[2] / pixels);
+                    String cell = "cell (" + j + "," + i + ") of aspect " + cellAspect;
+                    assertEquals(color, colors[i][j], cell);
+                    float brightness = (float)averageBrightness(image, j * 8, i * cellHeight, 8, cellHeight);
+                    assertEquals(charLookup.closestChar(brightness), chars[i][j], cell);
+                }
+            }
+        }
+        // a console's cells are taller than they're wide
+        assertTrue(CharRenderer.getCellAspect(FONT) > 1);
+    }
+
+    @Test
+    void preparedResolutionsAreOnlyMapped() throws InterruptedException {
+        Image image = ConversionProgressTest.randomImage(256, 256, 9);
+        Character[] charSet = CharSets.range(' ', '~');
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT);
+        matcher.prepare(32, 1);
+        matcher.prepare(16, 2);
+        for(double cellAspect: new double[]{1, 2}) {
+            int charsInRow = cellAspect == 1 ? 32 : 16;
+            char[][] chars = matcher.chooseChars(charsInRow, cellAspect, charSet);
+            assertEquals(0, matcher.getLastStats().getComputedTiles());
+            BrightnessImgCharMatcher cold = new BrightnessImgCharMatcher(image, FONT);
+            assertArrayEquals(cold.chooseChars(charsInRow, cellAspect, charSet), chars);
+            assertEquals(cold.getLastStats().getTiles(), cold.getLastStats().getComputedTiles());
+        }
+
+        // resolutions prepared on another thread while they're converted give the same pictures
+        BrightnessImgCharMatcher concurrent = new BrightnessImgCharMatcher(image, FONT);
+        int[] resolutions = {64, 128, 8, 4};
+        Thread warmer = new Thread(() -> {
+            for(int charsInRow: resolutions) {
+                concurrent.prepare(charsInRow, 1);
+            }
+        });
+        warmer.start();
+        for(int i = resolutions.length - 1; i >= 0; i--) {
+            char[][] chars = concurrent.chooseChars(resolutions[i], charSet);
+            assertArrayEquals(new BrightnessImgCharMatcher(image, FONT).chooseChars(resolutions[i], charSet), chars);
+        }
+        warmer.join();
+        for(int charsInRow: resolutions) {
+            concurrent.chooseChars(charsInRow, charSet);
+            assertEquals(0, concurrent.getLastStats().getComputedTiles());
+        }
+    }
+
+    private static double averageBrightness(Image image, int startX, int startY, int width, int height) {
+        double sum = 0;
+        for(int y = startY; y < startY + height; y++) {
+            for(int x = startX; x < startX + width; x++) {
+                sum += BrightnessImgCharMatcher.getGreyNormalized(image.getPixelArgb(x, y));
+            }
+        }
+        return sum / (width * height);
+    }
+}
@@ -0,0 +1,100 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of CharLookupTable, comparing its lookups to a brute force search over the charset.
+ * @author eran_turgeman
+ */
+class CharLookupTableTest {
+    private static final String FONT = "Courier new";
+    private static final int BUCKETS = 4096;
+    private static final int CHAR_IMAGE_SIZE = 16;
+
+    @Test
+    void charsOfEqualBrightnessResolveToTheFirstInTheCharset() {
+        CharLookupTable table = new CharLookupTable(new char[]{'b', 'a', 'c', 'd'},
+                new double[]{0.5, 0.5, 0, 0.5});
+        assertEquals('b', table.closestChar(0.5));
+        assertEquals('b', table.closestChar(0.6));
+        assertEquals('c', table.closestChar(0.1));
+    }
+
+    @Test
+    void digitsOfEqualBrightnessResolveToTheFirstInTheCharset() {
+        Character[] digits = CharSets.range('0', '9');
+        double[] brightness = normalizedBrightness(digits);
+        CharLookupTable table = new CharLookupTable(toChars(digits), brightness);
+        // in Courier new '6' and '9' are equally bright, and so are '0', '3' and '4'
+        for(int i = 0; i < digits.length; i++) {
+            int first = i;
+            for(int j = 0; j < i; j++) {
+                if(brightness[j] == brightness[i]) {
+                    first = j;
+                    break;
+                }
+            }
+            char expected = digits[first];
+            char digit = digits[i];
+            assertEquals(expected, table.closestChar(brightness[i]),
+                    () -> "the brightness of '" + digit + "' should map to '" + expected + "'");
+        }
+    }
+
+    @Test
+    void lookupsMatchBruteForceSearch() {
+        Character[][] charSets = {CharSets.range('0', '9'), CharSets.range('a', 'z'), CharSets.range('A', 'Z'),
+                CharSets.range(' ', '~'), CharSets.of(" .:-=+*#%@")};
+        for(Character[] charSet: charSets) {
+            double[] brightness = normalizedBrightness(charSet);
+            CharLookupTable table = new CharLookupTable(toChars(charSet), brightness);
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                double center = (bucket + 0.5) / BUCKETS;
+                int closest = 0;
+                for(int i = 1; i < charSet.length; i++) {
+                    if(Math.abs(brightness[i] - center) < Math.abs(brightness[closest] - center)) {
+                        closest = i;
+                    }
+                }
+                char expected = charSet[closest];
+                assertEquals(expected, table.closestChar(center),
+                        () -> "brightness " + center + " of charset " + CharSets.toString(charSet));
+            }
+        }
+    }
+
+    @Test
+    void brightnessOutsideTheRangeIsClamped() {
+        CharLookupTable table = new CharLookupTable(new char[]{'a', 'b'}, new double[]{0, 1});
+        assertEquals('a', table.closestChar(-1));
+        assertEquals('b', table.closestChar(2));
+    }
+
+    /*
+     * the brightness of every char, normalized as the matcher normalizes it
+     */
+    private static double[] normalizedBrightness(Character[] charSet) {
+        double[] brightness = new double[charSet.length];
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for(int i = 0; i < charSet.length; i++) {
+            brightness[i] = (double)GlyphAtlas.getShared().countWhitePixels(charSet[i], CHAR_IMAGE_SIZE, FONT) /
+                    (CHAR_IMAGE_SIZE * CHAR_IMAGE_SIZE);
+            min = Math.min(min, brightness[i]);
+            max = Math.max(max, brightness[i]);
+        }
+        for(int i = 0; i < charSet.length; i++) {
+            brightness[i] = (brightness[i] - min) / (max - min);
+        }
+        return brightness;
+    }
+
+    private static char[] toChars(Character[] charSet) {
+        char[] chars = new char[charSet.length];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = charSet[i];
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,57 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of CharPalette, comparing the tables it maintains incrementally to the tables
+ * CharLookupTable.of compiles from scratch.
+ * @author eran_turgeman
+ */
+class CharPaletteTest {
+    private static final String FONT = "Courier new";
+    private static final int BUCKETS = 4096;
+
+    @Test
+    void tablesMatchCompiledTablesAfterAddingAndRemovingChars() {
+        CharPalette palette = new CharPalette(FONT);
+        // in Courier new '8' is the darkest digit and '7' the brightest, so removing them and adding
+        // letters changes the range the brightness is normalized by
+        String[] charSets = {
+                "0123456789",
+                "0123456789abc",
+                "012345689abc",
+                "01234569abc",
+                "0123456789",
+                " .:-=+*#%@",
+                "@",
+                "@ ",
+                "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+                "0123456789"
+        };
+        for(String charSet: charSets) {
+            assertSameTable(CharLookupTable.of(CharSets.of(charSet), FONT), palette.update(CharSets.of(charSet)),
+                    charSet);
+        }
+    }
+
+    @Test
+    void unchangedCharSetReusesItsTable() {
+        CharPalette palette = new CharPalette(FONT);
+        CharLookupTable table = palette.update(CharSets.of("0123456789"));
+        assertSame(table, palette.update(CharSets.of("0123456789")));
+        // the same chars in another order, as after removing a char and adding it back
+        assertSame(table, palette.update(CharSets.of("9876543210")));
+        assertSame(table, palette.update(CharSets.of("0123456798")));
+        assertNotSame(table, palette.update(CharSets.of("012345678")));
+    }
+
+    private static void assertSameTable(CharLookupTable expected, CharLookupTable actual, String charSet) {
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            double center = (bucket + 0.5) / BUCKETS;
+            assertEquals(expected.closestChar(center), actual.closestChar(center),
+                    () -> "brightness " + center + " of charset \"" + charSet + "\"");
+        }
+    }
+}
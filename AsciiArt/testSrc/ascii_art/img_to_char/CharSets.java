@@ -0,0 +1,44 @@
+package ascii_art.img_to_char;
+
+/**
+ * Charsets shared by the tests of the package img_to_char.
+ * @author eran_turgeman
+ */
+final class CharSets {
+    private CharSets() {
+    }
+
+    /**
+     * @param chars the chars of the charset, in order
+     * @return the charset as the Shell passes it to the matchers
+     */
+    static Character[] of(String chars) {
+        Character[] charSet = new Character[chars.length()];
+        for(int i = 0; i < charSet.length; i++) {
+            charSet[i] = chars.charAt(i);
+        }
+        return charSet;
+    }
+
+    /**
+     * @return the chars from the first to the last, both included
+     */
+    static Character[] range(char from, char to) {
+        Character[] charSet = new Character[to - from + 1];
+        for(int i = 0; i < charSet.length; i++) {
+            charSet[i] = (char)(from + i);
+        }
+        return charSet;
+    }
+
+    /**
+     * @return the charset as a string, for assertion messages
+     */
+    static String toString(Character[] charSet) {
+        StringBuilder builder = new StringBuilder();
+        for(Character c: charSet) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
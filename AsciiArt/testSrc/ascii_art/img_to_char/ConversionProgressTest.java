@@ -0,0 +1,149 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of ConversionProgress, checking the rows RowBands reports and that cancelling a conversion
+ * stops it and keeps nothing it computed partially.
+ * @author eran_turgeman
+ */
+class ConversionProgressTest {
+    private static final int THREADS = 4;
+    private static final int ROWS = 37;
+
+    @Test
+    void completedRowsReachTheRowsOfEveryPass() {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            AtomicInteger lastCompleted = new AtomicInteger();
+            ConversionProgress progress = new ConversionProgress(
+                    (completedRows, totalRows) -> lastCompleted.accumulateAndGet(completedRows, Math::max));
+            AtomicIntegerArray runs = new AtomicIntegerArray(ROWS);
+            RowBands.forEach(pool, ROWS, progress, (fromRow, toRow) -> {
+                for(int row = fromRow; row < toRow; row++) {
+                    runs.incrementAndGet(row);
+                }
+            });
+            for(int row = 0; row < ROWS; row++) {
+                assertEquals(1, runs.get(row), "row " + row);
+            }
+            assertEquals(ROWS, progress.getCompletedRows());
+            assertEquals(ROWS, progress.getTotalRows());
+            assertEquals(ROWS, lastCompleted.get());
+            // a second pass adds its rows to the total
+            RowBands.forEach(null, ROWS, progress, (fromRow, toRow) -> { });
+            assertEquals(2 * ROWS, progress.getCompletedRows());
+            assertEquals(2 * ROWS, progress.getTotalRows());
+            assertEquals(2 * ROWS, lastCompleted.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void cancellingStopsBeforeTheNextRow() {
+        ConversionProgress progress = new ConversionProgress(null);
+        AtomicInteger runs = new AtomicInteger();
+        assertThrows(CancellationException.class, () -> RowBands.forEach(null, ROWS, progress, (fromRow, toRow) -> {
+            if(runs.incrementAndGet() == 10) {
+                progress.cancel();
+            }
+        }));
+        assertEquals(10, runs.get());
+        assertEquals(10, progress.getCompletedRows());
+        assertTrue(progress.isCancelled());
+    }
+
+    @Test
+    void cancellingStopsEveryBandOfAParallelPass() {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            int rows = 10000;
+            AtomicInteger startedAfterCancel = new AtomicInteger();
+            AtomicInteger runs = new AtomicInteger();
+            AtomicReference<ConversionProgress> progress = new AtomicReference<>();
+            progress.set(new ConversionProgress((completedRows, totalRows) -> {
+                if(completedRows == 100) {
+                    progress.get().cancel();
+                }
+            }));
+            assertThrows(CancellationException.class, () -> RowBands.forEach(pool, rows, progress.get(),
+                    (fromRow, toRow) -> {
+                        if(progress.get().isCancelled()) {
+                            startedAfterCancel.incrementAndGet();
+                        }
+                        runs.incrementAndGet();
+                    }));
+            // only the rows that were already past the check of a band when the conversion was cancelled run
+            assertTrue(startedAfterCancel.get() <= THREADS, startedAfterCancel + " rows started after cancelling");
+            assertTrue(runs.get() < rows);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void interruptingTheConvertingThreadCancels() {
+        ConversionProgress progress = new ConversionProgress(null);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class,
+                    () -> RowBands.forEach(null, ROWS, progress, (fromRow, toRow) -> fail("row " + fromRow)));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(0, progress.getCompletedRows());
+    }
+
+    @Test
+    void supersededConversionKeepsNothingPartial() {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            Image image = randomImage(256, 128, 1);
+            Character[] charSet = CharSets.range('a', 'z');
+            int charsInRow = 64;
+            BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, "Courier new", pool);
+            // the first conversion is cancelled a few rows in, as when a newer render supersedes it
+            AtomicReference<ConversionProgress> superseded = new AtomicReference<>();
+            superseded.set(new ConversionProgress((completedRows, totalRows) -> {
+                if(completedRows == 3) {
+                    superseded.get().cancel();
+                }
+            }));
+            assertThrows(CancellationException.class,
+                    () -> matcher.chooseChars(charsInRow, 1, charSet, superseded.get()));
+            ConversionProgress newer = new ConversionProgress(null);
+            char[][] chars = matcher.chooseChars(charsInRow, 1, charSet, newer);
+            char[][] expected = new BrightnessImgCharMatcher(image, "Courier new", pool)
+                    .chooseChars(charsInRow, charSet);
+            assertArrayEquals(expected, chars);
+            // the brightness of the cells was computed again, then mapped to chars, a pass over the rows each
+            assertEquals(2 * chars.length, newer.getTotalRows());
+            assertEquals(newer.getTotalRows(), newer.getCompletedRows());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static Image randomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return Image.fromBufferedImage(image);
+    }
+}
@@ -0,0 +1,90 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of ErrorDiffusion, checking that dithering preserves the mean brightness of the picture.
+ * The errors pushed past the right and bottom edges are lost, so the mean is preserved up to
+ * about one char's error per edge tile.
+ * @author eran_turgeman
+ */
+class ErrorDiffusionTest {
+    private static final int ROWS = 64;
+    private static final int COLS = 64;
+    private static final double TOLERANCE = 0.02;
+    private static final String BLACK_AND_WHITE = "# ";
+    private static final String FOUR_LEVELS = "#+. ";
+    // the brightness of the chars of the charsets
+    private static final String CHARS = "#+. ";
+    private static final double[] CHARS_BRIGHTNESS = {0, 0.3, 0.6, 1};
+
+    @Test
+    void uniformGridsKeepTheirMeanBrightness() {
+        for(String charSet: new String[]{BLACK_AND_WHITE, FOUR_LEVELS}) {
+            for(float value: new float[]{0.05f, 0.3f, 0.5f, 0.77f, 0.95f}) {
+                float[] grid = new float[ROWS * COLS];
+                Arrays.fill(grid, value);
+                assertMeanPreserved(grid, charSet);
+            }
+        }
+    }
+
+    @Test
+    void gradientAndNoiseKeepTheirMeanBrightness() {
+        float[] gradient = new float[ROWS * COLS];
+        float[] noise = new float[ROWS * COLS];
+        Random random = new Random(1);
+        for(int i = 0; i < ROWS; i++) {
+            for(int j = 0; j < COLS; j++) {
+                gradient[i * COLS + j] = (float)j / (COLS - 1);
+                noise[i * COLS + j] = random.nextFloat();
+            }
+        }
+        for(String charSet: new String[]{BLACK_AND_WHITE, FOUR_LEVELS}) {
+            assertMeanPreserved(gradient, charSet);
+            assertMeanPreserved(noise, charSet);
+        }
+    }
+
+    @Test
+    void everyTileGetsTheClosestCharWhenThereIsNoError() {
+        float[] grid = new float[ROWS * COLS];
+        for(int i = 0; i < grid.length; i++) {
+            grid[i] = i % 2 == 0 ? 0 : 1;
+        }
+        char[][] asciiArt = new char[ROWS][COLS];
+        ErrorDiffusion.dither(grid, COLS, lookupTable(BLACK_AND_WHITE), asciiArt, null);
+        for(int i = 0; i < ROWS; i++) {
+            for(int j = 0; j < COLS; j++) {
+                assertEquals(grid[i * COLS + j] == 0 ? '#' : ' ', asciiArt[i][j]);
+            }
+        }
+    }
+
+    private static void assertMeanPreserved(float[] grid, String charSet) {
+        char[][] asciiArt = new char[ROWS][COLS];
+        ErrorDiffusion.dither(grid, COLS, lookupTable(charSet), asciiArt, null);
+        double gridSum = 0, charsSum = 0;
+        for(int i = 0; i < ROWS; i++) {
+            for(int j = 0; j < COLS; j++) {
+                gridSum += grid[i * COLS + j];
+                charsSum += CHARS_BRIGHTNESS[CHARS.indexOf(asciiArt[i][j])];
+            }
+        }
+        assertEquals(gridSum / grid.length, charsSum / grid.length, TOLERANCE, "charset \"" + charSet + "\"");
+    }
+
+    private static CharLookupTable lookupTable(String charSet) {
+        char[] chars = charSet.toCharArray();
+        double[] brightness = new double[chars.length];
+        for(int i = 0; i < chars.length; i++) {
+            brightness[i] = CHARS_BRIGHTNESS[CHARS.indexOf(chars[i])];
+        }
+        return new CharLookupTable(chars, brightness);
+    }
+}
@@ -0,0 +1,73 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of ShapeImgCharMatcher, drawing tiles from the glyphs' own masks and checking which tiles are
+ * matched by shape and which by brightness.
+ * @author eran_turgeman
+ */
+class ShapeImgCharMatcherTest {
+    private static final String FONT = "Courier new";
+    private static final int TILE = 16;
+    private static final Character[] CHAR_SET = CharSets.of("/\\|-o.");
+
+    @Test
+    void tilesDrawnFromAGlyphMatchThatGlyph() {
+        for(char c: new char[]{'/', '\\', '|', '-', 'o'}) {
+            // a tile of a glyph's mask is at distance 0 from it, and other glyphs are farther
+            BufferedImage pixels = new BufferedImage(TILE, TILE, BufferedImage.TYPE_INT_RGB);
+            drawGlyph(pixels, 0, c, 0x000000, 0xFFFFFF);
+            char[][] chars = new ShapeImgCharMatcher(Image.fromBufferedImage(pixels), FONT, null)
+                    .chooseChars(1, CHAR_SET);
+            assertArrayEquals(new char[][]{{c}}, chars);
+        }
+    }
+
+    @Test
+    void flatTilesAreMatchedByBrightness() {
+        BufferedImage pixels = new BufferedImage(4 * TILE, TILE, BufferedImage.TYPE_INT_RGB);
+        drawGlyph(pixels, 0, '/', 0x000000, 0xFFFFFF);
+        drawGlyph(pixels, TILE, '|', 0x202020, 0xE0E0E0);
+        fill(pixels, 2 * TILE, 0x808080);
+        // a dark shape of a contrast under MIN_CONTRAST, 8 levels out of 255, has no shape to match
+        drawGlyph(pixels, 3 * TILE, '/', 0x080808, 0x101010);
+        Image image = Image.fromBufferedImage(pixels);
+        char[][] chars = new ShapeImgCharMatcher(image, FONT, null).chooseChars(4, CHAR_SET);
+        char[][] brightness = new BrightnessImgCharMatcher(image, FONT).chooseChars(4, CHAR_SET);
+        assertEquals('/', chars[0][0]);
+        assertEquals('|', chars[0][1]);
+        assertEquals(brightness[0][2], chars[0][2]);
+        assertEquals(brightness[0][3], chars[0][3]);
+        assertNotEquals('/', chars[0][3]);
+    }
+
+    /*
+     * draws the mask of a char into the tile starting at the given column, its white cells in one color
+     * and the rest in another
+     */
+    private static void drawGlyph(BufferedImage pixels, int startX, char c, int dark, int light) {
+        long[] mask = GlyphAtlas.getShared().getMask(c, TILE, FONT);
+        for(int y = 0; y < TILE; y++) {
+            for(int x = 0; x < TILE; x++) {
+                int bit = y * TILE + x;
+                boolean isWhite = (mask[bit / Long.SIZE] & 1L << (bit % Long.SIZE)) != 0;
+                pixels.setRGB(startX + x, y, isWhite ? light : dark);
+            }
+        }
+    }
+
+    private static void fill(BufferedImage pixels, int startX, int rgb) {
+        int[] row = new int[TILE];
+        Arrays.fill(row, rgb);
+        for(int y = 0; y < TILE; y++) {
+            pixels.setRGB(startX, y, TILE, 1, row, 0, TILE);
+        }
+    }
+}
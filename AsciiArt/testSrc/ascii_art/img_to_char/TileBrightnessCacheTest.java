@@ -0,0 +1,99 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of TileBrightnessCache's eviction policies. A cache of 4 tiles is a single set, so every
+ * tile competes with all the others and the order of eviction is fully determined.
+ * @author eran_turgeman
+ */
+class TileBrightnessCacheTest {
+    private static final int SINGLE_SET_CAPACITY = 4;
+
+    @Test
+    void lruEvictsTheLeastRecentlyUsedTile() {
+        TileBrightnessCache cache = fullCache(TileBrightnessCache.Eviction.LRU);
+        // reading tiles 0 and 1 leaves tile 2 the least recently used
+        assertEquals(0f, cache.get(tileKey(0)));
+        assertEquals(1f, cache.get(tileKey(1)));
+        cache.put(tileKey(4), 4);
+        assertTrue(Float.isNaN(cache.get(tileKey(2))));
+        // then tile 3, which was neither read nor written since
+        cache.put(tileKey(5), 5);
+        assertTrue(Float.isNaN(cache.get(tileKey(3))));
+        assertCached(cache, 0, 1, 4, 5);
+    }
+
+    @Test
+    void fifoEvictsTheFirstWrittenTile() {
+        TileBrightnessCache cache = fullCache(TileBrightnessCache.Eviction.FIFO);
+        // reads don't protect tiles 0 and 1 from eviction
+        assertEquals(0f, cache.get(tileKey(0)));
+        assertEquals(1f, cache.get(tileKey(1)));
+        cache.put(tileKey(4), 4);
+        assertTrue(Float.isNaN(cache.get(tileKey(0))));
+        cache.put(tileKey(5), 5);
+        assertTrue(Float.isNaN(cache.get(tileKey(1))));
+        assertCached(cache, 2, 3, 4, 5);
+    }
+
+    @Test
+    void rewritingACachedTileEvictsNothing() {
+        for(TileBrightnessCache.Eviction eviction: TileBrightnessCache.Eviction.values()) {
+            TileBrightnessCache cache = fullCache(eviction);
+            cache.put(tileKey(0), 0.5f);
+            // the rewritten tile is the newest, so tile 1 is evicted next
+            cache.put(tileKey(4), 4);
+            assertTrue(Float.isNaN(cache.get(tileKey(1))));
+            assertEquals(0.5f, cache.get(tileKey(0)));
+            assertCached(cache, 2, 3, 4);
+        }
+    }
+
+    @Test
+    void lookupsAreCounted() {
+        TileBrightnessCache cache = new TileBrightnessCache(SINGLE_SET_CAPACITY, TileBrightnessCache.Eviction.LRU);
+        cache.put(tileKey(0), 0);
+        cache.get(tileKey(0));
+        cache.get(tileKey(1));
+        cache.get(tileKey(1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void capacityIsRoundedUpToWholeSets() {
+        TileBrightnessCache.Eviction lru = TileBrightnessCache.Eviction.LRU;
+        assertEquals(4, new TileBrightnessCache(1, lru).getCapacity());
+        assertEquals(8, new TileBrightnessCache(5, lru).getCapacity());
+        assertEquals(1024, new TileBrightnessCache(1000, lru).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new TileBrightnessCache(0, lru));
+    }
+
+    /*
+     * a single set cache holding the tiles 0 to 3, written in order, each with its index as brightness
+     */
+    private static TileBrightnessCache fullCache(TileBrightnessCache.Eviction eviction) {
+        TileBrightnessCache cache = new TileBrightnessCache(SINGLE_SET_CAPACITY, eviction);
+        for(int tile = 0; tile < SINGLE_SET_CAPACITY; tile++) {
+            cache.put(tileKey(tile), tile);
+        }
+        return cache;
+    }
+
+    /*
+     * checks the tiles are cached with their index as brightness. reading them changes the order of an
+     * LRU cache, so it's checked last
+     */
+    private static void assertCached(TileBrightnessCache cache, int... tiles) {
+        for(int tile: tiles) {
+            assertEquals(tile, cache.get(tileKey(tile)), "tile " + tile + " should be cached");
+        }
+    }
+
+    private static long tileKey(int tile) {
+        return TileBrightnessCache.key(tile * 8, 0, 8);
+    }
+}
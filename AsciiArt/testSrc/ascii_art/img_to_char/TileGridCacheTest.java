@@ -0,0 +1,77 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of TileGridCache, checking that the grids it keeps stay within its byte capacity and which grid
+ * every eviction policy evicts.
+ * @author eran_turgeman
+ */
+class TileGridCacheTest {
+    // room for three grids of a hundred cells
+    private static final long CAPACITY_BYTES = 3 * 100 * Float.BYTES;
+
+    @Test
+    void lruEvictsTheLeastRecentlyReadGrid() {
+        TileGridCache cache = cacheOfThreeGrids(TileBrightnessCache.Eviction.LRU);
+        cache.getBrightness(1);
+        cache.putBrightnessIfAbsent(4, new float[100]);
+        assertNotNull(cache.getBrightness(1));
+        assertNull(cache.getBrightness(2));
+        assertNotNull(cache.getBrightness(3));
+        assertNotNull(cache.getBrightness(4));
+        assertEquals(CAPACITY_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void fifoEvictsTheFirstWrittenGrid() {
+        TileGridCache cache = cacheOfThreeGrids(TileBrightnessCache.Eviction.FIFO);
+        cache.getBrightness(1);
+        cache.putBrightnessIfAbsent(4, new float[100]);
+        assertNull(cache.getBrightness(1));
+        assertNotNull(cache.getBrightness(2));
+        assertEquals(CAPACITY_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void colorsCountTowardsTheCapacity() {
+        TileGridCache cache = cacheOfThreeGrids(TileBrightnessCache.Eviction.LRU);
+        cache.putColors(3, new int[100]);
+        assertNull(cache.getBrightness(1));
+        assertNotNull(cache.getColors(3));
+        assertNotNull(cache.getBrightness(3));
+        assertEquals(CAPACITY_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void aGridLargerThanTheCapacityIsKeptAlone() {
+        TileGridCache cache = cacheOfThreeGrids(TileBrightnessCache.Eviction.LRU);
+        float[] large = new float[400];
+        assertSame(large, cache.putBrightnessIfAbsent(4, large));
+        assertSame(large, cache.getBrightness(4));
+        for(long key = 1; key <= 3; key++) {
+            assertNull(cache.getBrightness(key));
+        }
+        assertEquals(large.length * Float.BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void theFirstGridOfATileSizeIsKept() {
+        TileGridCache cache = cacheOfThreeGrids(TileBrightnessCache.Eviction.LRU);
+        float[] first = cache.getBrightness(1);
+        assertSame(first, cache.putBrightnessIfAbsent(1, new float[100]));
+        assertNull(cache.getColors(1));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static TileGridCache cacheOfThreeGrids(TileBrightnessCache.Eviction eviction) {
+        TileGridCache cache = new TileGridCache(CAPACITY_BYTES, eviction);
+        for(long key = 1; key <= 3; key++) {
+            cache.putBrightnessIfAbsent(key, new float[100]);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,123 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests of ConsoleAsciiOutput, writing its frames to a channel in memory and comparing them to what
+ * printing the chars one at a time used to write.
+ * @author eran_turgeman
+ */
+class ConsoleAsciiOutputTest {
+    private static final String SEPARATOR = System.lineSeparator();
+    private static final char[][] CHARS = {{'a', 'b', 'c'}, {'#', ' ', '@'}};
+
+    @Test
+    void framesArePrintedAsBefore() {
+        MemoryChannel channel = new MemoryChannel();
+        ConsoleAsciiOutput padded = new ConsoleAsciiOutput(true, channel);
+        padded.output(CHARS);
+        assertFrame("a b c " + SEPARATOR + "#   @ " + SEPARATOR, channel, padded);
+        ConsoleAsciiOutput unpadded = new ConsoleAsciiOutput(false, channel);
+        unpadded.output(CHARS);
+        assertFrame("abc" + SEPARATOR + "# @" + SEPARATOR, channel, unpadded);
+    }
+
+    @Test
+    void redrawnFramesClearTheScreenOnce() {
+        MemoryChannel channel = new MemoryChannel();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(false, channel);
+        output.setRedrawing(true);
+        output.output(CHARS);
+        assertFrame("\033[2J\033[Habc\033[K" + SEPARATOR + "# @\033[K" + SEPARATOR + "\033[J", channel, output);
+        // the next frames are drawn over the previous one, from the top of the console
+        output.output(new char[][]{{'x'}});
+        assertFrame("\033[Hx\033[K" + SEPARATOR + "\033[J", channel, output);
+        output.setRedrawing(false);
+        output.output(new char[][]{{'x'}});
+        assertFrame("x" + SEPARATOR, channel, output);
+    }
+
+    @Test
+    void colorEscapesAreWrittenOnlyWhereTheColorChanges() {
+        MemoryChannel channel = new MemoryChannel();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(false, channel);
+        // the first two colors quantise to the same color
+        int[][] colors = {{0xFF0000, 0xFF0101, 0x00FF00}, {0x0000FF, 0x0000FF, 0x0000FF}};
+        output.output(CHARS, colors);
+        assertFrame("\033[38;2;248;0;0mab\033[38;2;0;248;0mc\033[0m" + SEPARATOR +
+                "\033[38;2;0;0;248m# @\033[0m" + SEPARATOR, channel, output);
+    }
+
+    @Test
+    void largeFramesAreASingleWrite() {
+        MemoryChannel channel = new MemoryChannel();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(true, channel);
+        char[][] chars = new char[300][400];
+        StringBuilder expected = new StringBuilder();
+        for(char[] row: chars) {
+            Arrays.fill(row, '%');
+            expected.append("% ".repeat(row.length)).append(SEPARATOR);
+        }
+        output.output(chars);
+        assertFrame(expected.toString(), channel, output);
+        assertTrue(output.getBytesWritten() > 1 << 16);
+    }
+
+    @Test
+    void bytesWrittenCountTheEncodedBytes() {
+        String chars = "\u00e9\u20ac";
+        assumeTrue(Charset.defaultCharset().newEncoder().canEncode(chars));
+        MemoryChannel channel = new MemoryChannel();
+        ConsoleAsciiOutput output = new ConsoleAsciiOutput(false, channel);
+        output.output(new char[][]{chars.toCharArray()});
+        assertFrame(chars + SEPARATOR, channel, output);
+    }
+
+    /*
+     * checks that the last output wrote the frame with a single write, and counted its bytes
+     */
+    private static void assertFrame(String expected, MemoryChannel channel, ConsoleAsciiOutput output) {
+        byte[] expectedBytes = expected.getBytes(Charset.defaultCharset());
+        assertEquals(1, channel.writes);
+        assertArrayEquals(expectedBytes, channel.bytes.toByteArray());
+        assertEquals(expectedBytes.length, output.getBytesWritten());
+        channel.writes = 0;
+        channel.bytes.reset();
+    }
+
+    /*
+     * keeps the bytes written to it and counts the writes
+     */
+    private static class MemoryChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int writes;
+
+        @Override
+        public int write(ByteBuffer src) {
+            writes++;
+            int length = src.remaining();
+            byte[] written = new byte[length];
+            src.get(written);
+            bytes.write(written, 0, length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of HtmlAsciiOutput, checking the rows of its paragraph and that every way of writing its file
+ * writes the same document.
+ * @author eran_turgeman
+ */
+class HtmlAsciiOutputTest {
+    private static final String SEPARATOR = System.lineSeparator();
+    private static final String FONT = "Courier New";
+    private static final char[][] CHARS = {{'<', '&', '>', 'a'}, {'#', '#', ' ', '@'}};
+
+    @Test
+    void specialCharsAreEscaped() throws IOException {
+        assertEquals("&lt;&amp;&gt;a" + SEPARATOR + "## @" + SEPARATOR, rows(CHARS, null));
+    }
+
+    @Test
+    void cellsOfTheSameColorShareASpan() throws IOException {
+        // the first three colors quantise to the same color, and the second row is of a single color
+        int[][] colors = {{0xFF0000, 0xFF0101, 0xFC0303, 0x00FF00}, {0x0000FF, 0x0000FF, 0x0000FF, 0x0000FF}};
+        assertEquals("<span style=\"color:#f80000\">&lt;&amp;&gt;</span><span style=\"color:#00f800\">a</span>" +
+                SEPARATOR + "<span style=\"color:#0000f8\">## @</span>" + SEPARATOR, rows(CHARS, colors));
+        // a color that comes back after another one opens a span of its own
+        int[][] alternating = {{0x000000, 0xFFFFFF, 0x000000}};
+        assertEquals("<span style=\"color:#000000\">a</span><span style=\"color:#f8f8f8\">b</span>" +
+                "<span style=\"color:#000000\">c</span>" + SEPARATOR, rows(new char[][]{{'a', 'b', 'c'}}, alternating));
+    }
+
+    @Test
+    void everyFileHoldsTheWrittenDocument() throws IOException {
+        int[][] colors = {{0x102030, 0x102030, 0xFFFFFF, 0}, {0xABCDEF, 0, 0, 0}};
+        StringWriter expected = new StringWriter();
+        new HtmlAsciiOutput("unused.html", FONT).writeDocument(expected, CHARS, colors);
+        for(boolean useChannel: new boolean[]{false, true}) {
+            for(boolean gzip: new boolean[]{false, true}) {
+                File file = File.createTempFile("output", ".html");
+                file.deleteOnExit();
+                HtmlAsciiOutput output = new HtmlAsciiOutput(file.getPath(), FONT, useChannel, gzip);
+                output.output(CHARS, colors);
+                assertEquals(file.length(), output.getBytesWritten());
+                try(InputStream in = gzip ? new GZIPInputStream(new FileInputStream(file)) :
+                        new FileInputStream(file)) {
+                    assertEquals(expected.toString(), new String(in.readAllBytes(), Charset.defaultCharset()),
+                            "channel " + useChannel + ", gzip " + gzip);
+                }
+            }
+        }
+    }
+
+    @Test
+    void failedWritesWriteNoBytes() throws IOException {
+        File directory = Files.createTempDirectory("output").toFile();
+        directory.deleteOnExit();
+        HtmlAsciiOutput output = new HtmlAsciiOutput(directory.getPath(), FONT);
+        output.output(CHARS);
+        assertEquals(-1, output.getBytesWritten());
+    }
+
+    /*
+     * the rows of the paragraph of the document of the chars
+     */
+    private static String rows(char[][] chars, int[][] colors) throws IOException {
+        StringWriter writer = new StringWriter();
+        new HtmlAsciiOutput("unused.html", FONT).writeParagraph(writer, chars, colors, "", "");
+        String paragraph = writer.toString();
+        assertTrue(paragraph.endsWith("</p>\n"));
+        return paragraph.substring(paragraph.indexOf(">\n") + 2, paragraph.length() - "</p>\n".length());
+    }
+}
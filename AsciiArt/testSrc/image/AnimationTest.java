@@ -0,0 +1,202 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of Animation, checking the pixels that its frames report as changed and the composition of the
+ * frames of a GIF according to their disposal methods.
+ * @author eran_turgeman
+ */
+class AnimationTest {
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF00FF00;
+    private static final int BLUE = 0xFF0000FF;
+    private static final int BLACK = 0xFF000000;
+
+    @Test
+    void fileFramesReportOnlyTheChangedPixels() throws IOException {
+        BufferedImage first = SummedAreaTableTest.randomImage(16, 16, 1);
+        BufferedImage second = copy(first);
+        // two pixels of the row 5 and one of the row 9 change
+        second.setRGB(3, 5, ~first.getRGB(3, 5));
+        second.setRGB(10, 5, ~first.getRGB(10, 5));
+        second.setRGB(7, 9, ~first.getRGB(7, 9));
+        Iterator<Animation.Frame> frames = Animation.fromFrameFiles(
+                List.of(write(first, "png"), write(second, "png"), write(second, "png"))).iterator();
+
+        Animation.Frame frame = frames.next();
+        assertEquals(0, frame.getChangedTop());
+        assertEquals(16, frame.getChangedBottom());
+        assertTrue(frame.isChanged(15, 15, 1, 1));
+
+        frame = frames.next();
+        assertEquals(5, frame.getChangedTop());
+        assertEquals(10, frame.getChangedBottom());
+        assertTrue(frame.isChanged(3, 5, 1, 1));
+        assertTrue(frame.isChanged(10, 5, 1, 1));
+        // the columns between the first and last change of a row are counted as changed
+        assertTrue(frame.isChanged(6, 5, 1, 1));
+        assertFalse(frame.isChanged(0, 5, 3, 1));
+        assertFalse(frame.isChanged(11, 5, 5, 1));
+        assertTrue(frame.isChanged(4, 8, 4, 4));
+        assertFalse(frame.isChanged(0, 6, 16, 3));
+        assertFalse(frame.isChanged(8, 9, 8, 7));
+        assertEquals(second.getRGB(7, 9) | Image.OPAQUE_ALPHA, frame.getImage().getPixelArgb(7, 9));
+
+        frame = frames.next();
+        assertEquals(16, frame.getChangedTop());
+        assertEquals(16, frame.getChangedBottom());
+        assertFalse(frame.isChanged(0, 0, 16, 16));
+        assertFalse(frames.hasNext());
+    }
+
+    @Test
+    void gifFramesAreComposedByTheirDisposal() throws IOException {
+        String gif = writeGif(
+                new GifFrame(fill(16, 16, RED), 0, 0, "none"),
+                new GifFrame(fill(4, 4, BLUE), 4, 4, "restoreToBackgroundColor"),
+                new GifFrame(fill(4, 4, GREEN), 8, 8, "restoreToPrevious"),
+                new GifFrame(fill(1, 1, BLACK), 0, 0, "none"));
+        List<int[]> pictures = new ArrayList<>();
+        List<Animation.Frame> frames = new ArrayList<>();
+        for(Animation.Frame frame: Animation.fromGif(gif)) {
+            pictures.add(pixels(frame.getImage()));
+            frames.add(frame);
+        }
+        assertEquals(4, pictures.size());
+
+        int[] expected = fill(16, 16, RED).getRGB(0, 0, 16, 16, null, 0, 16);
+        assertArrayEquals(expected, pictures.get(0));
+        paint(expected, 4, 4, 4, BLUE);
+        assertArrayEquals(expected, pictures.get(1));
+        // the blue square is restored to the background before the green one is drawn
+        paint(expected, 4, 4, 4, WHITE);
+        paint(expected, 8, 8, 4, GREEN);
+        assertArrayEquals(expected, pictures.get(2));
+        // the green square is restored to the red under it
+        paint(expected, 8, 8, 4, RED);
+        paint(expected, 0, 0, 1, BLACK);
+        assertArrayEquals(expected, pictures.get(3));
+
+        assertEquals(50, frames.get(1).getDelayMillis());
+        assertFalse(frames.get(2).isChanged(0, 0, 16, 4));
+        assertTrue(frames.get(2).isChanged(4, 4, 1, 1));
+        assertEquals(0, frames.get(3).getChangedTop());
+        assertEquals(12, frames.get(3).getChangedBottom());
+        assertFalse(frames.get(3).isChanged(1, 0, 15, 8));
+    }
+
+    private static final class GifFrame {
+        private final BufferedImage image;
+        private final int x;
+        private final int y;
+        private final String disposal;
+
+        GifFrame(BufferedImage image, int x, int y, String disposal) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+            this.disposal = disposal;
+        }
+    }
+
+    /*
+     * writes the frames to an animated gif, placed and disposed of as given, 50 milliseconds each
+     */
+    private static String writeGif(GifFrame... frames) throws IOException {
+        File file = File.createTempFile("frames", ".gif");
+        file.deleteOnExit();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        try(ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            writer.prepareWriteSequence(null);
+            for(GifFrame frame: frames) {
+                IIOMetadata metadata = writer.getDefaultImageMetadata(
+                        ImageTypeSpecifier.createFromRenderedImage(frame.image), null);
+                IIOMetadataNode root = (IIOMetadataNode)metadata.getAsTree(GIF_IMAGE_METADATA);
+                IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+                descriptor.setAttribute("imageLeftPosition", Integer.toString(frame.x));
+                descriptor.setAttribute("imageTopPosition", Integer.toString(frame.y));
+                IIOMetadataNode control = child(root, "GraphicControlExtension");
+                control.setAttribute("disposalMethod", frame.disposal);
+                control.setAttribute("userInputFlag", "FALSE");
+                control.setAttribute("transparentColorFlag", "FALSE");
+                control.setAttribute("transparentColorIndex", "0");
+                control.setAttribute("delayTime", "5");
+                metadata.setFromTree(GIF_IMAGE_METADATA, root);
+                writer.writeToSequence(new IIOImage(frame.image, null, metadata), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        return file.getPath();
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+        for(org.w3c.dom.Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if(node.getNodeName().equals(name))
+                return (IIOMetadataNode)node;
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+
+    private static BufferedImage fill(int width, int height, int argb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(argb));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+
+    private static void paint(int[] pixels, int x, int y, int size, int argb) {
+        for(int row = y; row < y + size; row++) {
+            for(int col = x; col < x + size; col++) {
+                pixels[row * 16 + col] = argb;
+            }
+        }
+    }
+
+    private static int[] pixels(Image image) {
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        for(int y = 0; y < image.getHeight(); y++) {
+            image.getRowArgb(y, 0, image.getWidth(), pixels, y * image.getWidth());
+        }
+        return pixels;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        copy.setData(image.getData());
+        return copy;
+    }
+
+    private static String write(BufferedImage pixels, String format) throws IOException {
+        File file = File.createTempFile("frame", "." + format);
+        file.deleteOnExit();
+        ImageIO.write(pixels, format, file);
+        return file.getPath();
+    }
+}
@@ -0,0 +1,48 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of BrightnessPyramid, comparing the tiles of every level to averaging the pixels directly.
+ * @author eran_turgeman
+ */
+class BrightnessPyramidTest {
+    private static final double TOLERANCE = 1e-7;
+
+    @Test
+    void tilesOfEveryLevelMatchBruteForce() throws IOException {
+        // a 50*37 image is padded to 64*64, so tiles of every level touch the margins, and some of
+        // them lie entirely in the margins
+        Image image = SummedAreaTableTest.imageOf(SummedAreaTableTest.randomImage(50, 37, 1));
+        BrightnessPyramid pyramid = BrightnessPyramid.of(image);
+        for(int tilePixels = 2; tilePixels <= image.getWidth(); tilePixels *= 2) {
+            int level = pyramid.levelOfTileSize(tilePixels);
+            assertEquals(Integer.numberOfTrailingZeros(tilePixels), level);
+            assertEquals(image.getWidth() / tilePixels, pyramid.getLevelWidth(level));
+            assertEquals(image.getHeight() / tilePixels, pyramid.getLevelHeight(level));
+            for(int row = 0; row < pyramid.getLevelHeight(level); row++) {
+                for(int col = 0; col < pyramid.getLevelWidth(level); col++) {
+                    int x = col * tilePixels, y = row * tilePixels, size = tilePixels;
+                    assertEquals(SummedAreaTableTest.bruteForceAverage(image, x, y, size, size),
+                            pyramid.tileBrightness(level, col, row), TOLERANCE,
+                            () -> "tile " + size + "*" + size + " at (" + x + "," + y + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void tileSizesWithoutALevelAreRejected() throws IOException {
+        BrightnessPyramid pyramid = BrightnessPyramid.of(
+                SummedAreaTableTest.imageOf(SummedAreaTableTest.randomImage(50, 37, 2)));
+        assertEquals(-1, pyramid.levelOfTileSize(1));
+        assertEquals(-1, pyramid.levelOfTileSize(3));
+        assertEquals(-1, pyramid.levelOfTileSize(12));
+        assertEquals(-1, pyramid.levelOfTileSize(128));
+        assertThrows(IndexOutOfBoundsException.class, () -> pyramid.tileBrightness(1, 32, 0));
+    }
+}
@@ -0,0 +1,32 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of FileImage, checking that its pixels are opaque whichever way they're read.
+ * @author eran_turgeman
+ */
+class FileImageTest {
+    @Test
+    void translucentPixelsAreReadOpaque() {
+        BufferedImage pixels = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        int[] argb = {0x00123456, 0x80FF0000, 0xFF00FF00, 0x01000000, 0x7F0000FF, 0xFFFFFFFF};
+        pixels.setRGB(0, 0, 3, 2, argb, 0, 3);
+        // a 3*2 image is padded to 4*2, with a margin of a column on the right
+        Image image = Image.fromBufferedImage(pixels);
+        int[] row = new int[image.getWidth()];
+        for(int y = 0; y < image.getHeight(); y++) {
+            image.getRowArgb(y, 0, row.length, row, 0);
+            for(int x = 0; x < image.getWidth(); x++) {
+                int expected = x == 3 ? 0xFFFFFFFF : argb[y * 3 + x] | Image.OPAQUE_ALPHA;
+                assertEquals(expected, image.getPixelArgb(x, y));
+                assertEquals(expected, row[x]);
+                assertEquals(expected, image.getPixel(x, y).getRGB());
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the streams of Image and the spliterators they're made of, checking their sizes as they're
+ * traversed and split, and that the parts of a split cover the image exactly once and in order.
+ * @author eran_turgeman
+ */
+class ImageStreamTest {
+    // a 24*13 image is padded to 32*16
+    private static final Image IMAGE = Image.fromBufferedImage(SummedAreaTableTest.randomImage(24, 13, 1));
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 16;
+
+    @Test
+    void pixelSizesAreExactAfterTraversingAndSplitting() {
+        int[] pixels = pixels(IMAGE);
+        PixelSpliterator spliterator = new PixelSpliterator(IMAGE, 0, HEIGHT);
+        assertSize(WIDTH * HEIGHT, spliterator);
+        List<Integer> traversed = new ArrayList<>();
+        for(int i = 0; i < WIDTH + 5; i++) {
+            assertTrue(spliterator.tryAdvance((int argb) -> traversed.add(argb)));
+        }
+        assertSize(WIDTH * HEIGHT - WIDTH - 5, spliterator);
+        // the prefix takes the rest of the partly traversed row along
+        Spliterator.OfInt prefix = spliterator.trySplit();
+        assertSize(WIDTH * (HEIGHT / 2) - WIDTH - 5, prefix);
+        assertSize(WIDTH * (HEIGHT / 2), spliterator);
+        prefix.forEachRemaining((int argb) -> traversed.add(argb));
+        assertSize(0, prefix);
+        assertTrue(spliterator.tryAdvance((int argb) -> traversed.add(argb)));
+        assertSize(WIDTH * (HEIGHT / 2) - 1, spliterator);
+        spliterator.forEachRemaining((int argb) -> traversed.add(argb));
+        assertSize(0, spliterator);
+        assertFalse(spliterator.tryAdvance((int argb) -> fail()));
+        assertEquals(IntStream.of(pixels).boxed().collect(Collectors.toList()), traversed);
+    }
+
+    @Test
+    void pixelSplitsCoverEveryPixelOnceInOrder() {
+        PixelSpliterator spliterator = new PixelSpliterator(IMAGE, 0, HEIGHT);
+        spliterator.tryAdvance((int argb) -> { });
+        List<Integer> traversed = new ArrayList<>();
+        traverseSplitting(spliterator, traversed);
+        int[] pixels = pixels(IMAGE);
+        assertEquals(IntStream.of(pixels).skip(1).boxed().collect(Collectors.toList()), traversed);
+        // a range of a single row can't be split
+        assertNull(new PixelSpliterator(IMAGE, 3, 4).trySplit());
+    }
+
+    @Test
+    void cellSizesAreExactAfterTraversingAndSplitting() {
+        int cols = 5, rows = 9;
+        RowRangeSpliterator<Integer> spliterator = new RowRangeSpliterator<>(
+                (col, row) -> row * cols + col, cols, 0, rows);
+        assertSize(cols * rows, spliterator);
+        List<Integer> traversed = new ArrayList<>();
+        for(int i = 0; i < 7; i++) {
+            assertTrue(spliterator.tryAdvance(traversed::add));
+        }
+        assertSize(cols * rows - 7, spliterator);
+        // rows 1 to 4 go to the prefix, with the 3 cells left of row 1
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertSize(3 * cols + 3, prefix);
+        assertSize(4 * cols, spliterator);
+        prefix.forEachRemaining(traversed::add);
+        spliterator.forEachRemaining(traversed::add);
+        assertSize(0, prefix);
+        assertSize(0, spliterator);
+        assertEquals(IntStream.range(0, cols * rows).boxed().collect(Collectors.toList()), traversed);
+    }
+
+    @Test
+    void cellSplitsCoverEveryCellOnceInOrder() {
+        int cols = 3, rows = 23;
+        RowRangeSpliterator<Integer> spliterator = new RowRangeSpliterator<>(
+                (col, row) -> row * cols + col, cols, 0, rows);
+        spliterator.tryAdvance(cell -> { });
+        List<Integer> traversed = new ArrayList<>();
+        traverseSplitting(spliterator, traversed);
+        assertEquals(IntStream.range(1, cols * rows).boxed().collect(Collectors.toList()), traversed);
+        // a grid with no columns has no cells in any of its rows
+        assertSize(0, new RowRangeSpliterator<>((col, row) -> row, 0, 0, rows));
+    }
+
+    @Test
+    void parallelStreamsMatchSequentialStreams() {
+        assertEquals(IMAGE.pixelArgbStream().asLongStream().sum(),
+                IMAGE.pixelArgbStream().parallel().asLongStream().sum());
+        assertArrayEquals(pixels(IMAGE), IMAGE.pixelArgbStream().parallel().toArray());
+        assertArrayEquals(IMAGE.rowStream().toArray(int[][]::new), IMAGE.rowStream().parallel().toArray(int[][]::new));
+        assertEquals(HEIGHT, IMAGE.rowStream().parallel().count());
+        // only the 5*2 sub-images of 6*7 pixels that fit in the image
+        List<Image> subImages = IMAGE.subImageStream(6, 7).parallel().collect(Collectors.toList());
+        assertEquals(10, subImages.size());
+        for(int i = 0; i < subImages.size(); i++) {
+            assertEquals(new ImageView(IMAGE, i % 5 * 6, i / 5 * 7, 6, 7), subImages.get(i));
+        }
+        assertEquals(IMAGE.squareSubImageStream(4).mapToLong(ImageStreamTest::sum).sum(),
+                IMAGE.squareSubImageStream(4).parallel().mapToLong(ImageStreamTest::sum).sum());
+        assertEquals(32, IMAGE.squareSubImageStream(4).parallel().count());
+    }
+
+    /*
+     * traverses the parts of a spliterator split as far as it goes, prefixes first
+     */
+    private static <T> void traverseSplitting(Spliterator<T> spliterator, List<T> traversed) {
+        long size = spliterator.estimateSize();
+        Spliterator<T> prefix = spliterator.trySplit();
+        if(prefix == null) {
+            spliterator.forEachRemaining(traversed::add);
+            return;
+        }
+        assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+        traverseSplitting(prefix, traversed);
+        traverseSplitting(spliterator, traversed);
+    }
+
+    private static void assertSize(long expected, Spliterator<?> spliterator) {
+        assertEquals(expected, spliterator.estimateSize());
+        assertEquals(expected, spliterator.getExactSizeIfKnown());
+    }
+
+    private static long sum(Image image) {
+        long sum = 0;
+        for(int y = 0; y < image.getHeight(); y++) {
+            for(int x = 0; x < image.getWidth(); x++) {
+                sum += image.getPixelArgb(x, y);
+            }
+        }
+        return sum;
+    }
+
+    private static int[] pixels(Image image) {
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        for(int y = 0; y < image.getHeight(); y++) {
+            image.getRowArgb(y, 0, image.getWidth(), pixels, y * image.getWidth());
+        }
+        return pixels;
+    }
+}
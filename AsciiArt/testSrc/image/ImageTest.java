@@ -0,0 +1,94 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the bulk reads of Image, checking that the rows and pixels it visits are those getPixelArgb
+ * reads one at a time, for padded images, views and images that only implement getPixel.
+ * @author eran_turgeman
+ */
+class ImageTest {
+    // a 50*37 image is padded to 64*64, with margins of 7 columns and 13 rows on the left and top
+    private static final Image PADDED = Image.fromBufferedImage(SummedAreaTableTest.randomImage(50, 37, 1));
+
+    @Test
+    void rowRunsMatchSinglePixels() {
+        for(Image image: images()) {
+            int[] row = new int[image.getWidth() + 3];
+            for(int y = 0; y < image.getHeight(); y++) {
+                // a run from the left margin into the content, and one of the rest of the row
+                int split = Math.min(image.getWidth(), 9);
+                image.getRowArgb(y, 0, split, row, 3);
+                image.getRowArgb(y, split, image.getWidth() - split, row, 3 + split);
+                for(int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getPixelArgb(x, y), row[3 + x], "(" + x + "," + y + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void pixelsAreVisitedRowAfterRow() {
+        for(Image image: images()) {
+            int x = 3, y = 5, width = image.getWidth() - 4, height = image.getHeight() - 9;
+            List<int[]> visited = new ArrayList<>();
+            image.forEachPixel(x, y, width, height,
+                    (pixelX, pixelY, argb) -> visited.add(new int[]{pixelX, pixelY, argb}));
+            assertEquals(width * height, visited.size());
+            for(int i = 0; i < visited.size(); i++) {
+                int expectedX = x + i % width, expectedY = y + i / width;
+                assertArrayEquals(new int[]{expectedX, expectedY, image.getPixelArgb(expectedX, expectedY)},
+                        visited.get(i));
+            }
+            List<int[]> all = new ArrayList<>();
+            image.forEachPixel((pixelX, pixelY, argb) -> all.add(new int[]{pixelX, pixelY}));
+            assertEquals(image.getWidth() * image.getHeight(), all.size());
+            assertArrayEquals(new int[]{image.getWidth() - 1, image.getHeight() - 1}, all.get(all.size() - 1));
+        }
+    }
+
+    @Test
+    void readsOutsideTheImageThrow() {
+        for(Image image: images()) {
+            int[] row = new int[image.getWidth()];
+            assertThrows(IndexOutOfBoundsException.class, () -> image.getRowArgb(image.getHeight(), 0, 1, row, 0));
+            assertThrows(IndexOutOfBoundsException.class, () -> image.getRowArgb(0, 1, row.length, row, 0));
+            assertThrows(IndexOutOfBoundsException.class, () -> image.getRowArgb(0, 0, 2, row, row.length - 1));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> image.forEachPixel(0, 1, 1, image.getHeight(), (x, y, argb) -> fail()));
+            assertThrows(IndexOutOfBoundsException.class,
+                    () -> image.forEachPixel(-1, 0, 1, 1, (x, y, argb) -> fail()));
+        }
+    }
+
+    /*
+     * a padded image, a view of it across its margin, a view of that view, and an image reading its
+     * pixels only through getPixel
+     */
+    private static List<Image> images() {
+        ImageView view = new ImageView(PADDED, 4, 10, 40, 20);
+        Image colors = new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                return new Color(x * 16, y * 16, 128, 77);
+            }
+
+            @Override
+            public int getWidth() {
+                return 16;
+            }
+
+            @Override
+            public int getHeight() {
+                return 12;
+            }
+        };
+        return List.of(PADDED, view, new ImageView(view, 2, 2, 30, 16), colors);
+    }
+}
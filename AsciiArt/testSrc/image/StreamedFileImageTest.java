@@ -0,0 +1,168 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of StreamedFileImage, comparing its pixels to those of a FileImage of the same file.
+ * @author eran_turgeman
+ */
+class StreamedFileImageTest {
+    private static final int WHITE = 0xFFFFFFFF;
+    private static final String DECODER_THREAD = "streamed-image-decoder";
+
+    @Test
+    void streamedPixelsMatchFileImage() throws IOException {
+        for(String format: new String[]{"png", "jpg", "bmp", "gif"}) {
+            // a 50*37 image is padded to 64*64, with margins of 7 columns and 13 rows on the left and top
+            File file = write(SummedAreaTableTest.randomImage(50, 37, 1), format);
+            Image expected = new FileImage(file.getPath());
+            try(Image image = new StreamedFileImage(file.getPath(), 8)) {
+                assertEquals(expected.getWidth(), image.getWidth());
+                assertEquals(expected.getHeight(), image.getHeight());
+                assertTrue(image.isStreamed());
+                int[] expectedRow = new int[expected.getWidth()], row = new int[image.getWidth()];
+                for(int y = 0; y < image.getHeight(); y++) {
+                    expected.getRowArgb(y, 0, expectedRow.length, expectedRow, 0);
+                    image.getRowArgb(y, 0, row.length, row, 0);
+                    assertArrayEquals(expectedRow, row, format + " row " + y);
+                    for(int x = 0; x < image.getWidth(); x++) {
+                        assertEquals(expectedRow[x], image.getPixelArgb(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void bandsReadOutOfOrderMatchFileImage() throws IOException {
+        File file = write(SummedAreaTableTest.randomImage(40, 100, 2), "png");
+        Image expected = new FileImage(file.getPath());
+        try(Image image = new StreamedFileImage(file.getPath(), 8)) {
+            // the bottom band, then back above the bands in the window, then bands skipped on the way down
+            int[] rows = {120, 127, 14, 13, 80, 81, 40, 100, 113, 27};
+            for(int y: rows) {
+                for(int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(expected.getPixelArgb(x, y), image.getPixelArgb(x, y), "(" + x + "," + y + ")");
+                }
+            }
+            Random random = new Random(3);
+            for(int i = 0; i < 500; i++) {
+                int x = random.nextInt(image.getWidth()), y = random.nextInt(image.getHeight());
+                assertEquals(expected.getPixelArgb(x, y), image.getPixelArgb(x, y), "(" + x + "," + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void marginRowsAreWhite() throws IOException {
+        BufferedImage black = new BufferedImage(6, 5, BufferedImage.TYPE_INT_RGB);
+        // a 6*5 image is padded to 8*8, with a margin of a column on the left and right and of a row
+        // above and two below
+        try(StreamedFileImage image = new StreamedFileImage(write(black, "png").getPath(), 2)) {
+            assertEquals(1, image.getContentX());
+            assertEquals(1, image.getContentY());
+            assertEquals(6, image.getContentWidth());
+            assertEquals(5, image.getContentHeight());
+            int[] row = new int[10];
+            for(int y = 0; y < 8; y++) {
+                image.getRowArgb(y, 0, 8, row, 1);
+                for(int x = 0; x < 8; x++) {
+                    boolean isMargin = y < 1 || y >= 6 || x < 1 || x >= 7;
+                    int expected = isMargin ? WHITE : 0xFF000000;
+                    assertEquals(expected, image.getPixelArgb(x, y), "(" + x + "," + y + ")");
+                    assertEquals(expected, row[x + 1], "(" + x + "," + y + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    void closeStopsDecoding() throws IOException {
+        File file = write(SummedAreaTableTest.randomImage(64, 300, 4), "png");
+        StreamedFileImage image = new StreamedFileImage(file.getPath(), 16);
+        int first = image.getPixelArgb(0, 0);
+        image.close();
+        assertFalse(isDecoderRunning());
+        // the band already decoded is still there, but no other band can be decoded
+        assertEquals(first, image.getPixelArgb(0, 0));
+        assertThrows(IllegalStateException.class, () -> image.getPixelArgb(0, 400));
+        image.close();
+    }
+
+    @Test
+    void fromFileStreamsOnlyLargeImages() throws IOException {
+        File small = write(SummedAreaTableTest.randomImage(50, 37, 5), "png");
+        try(Image image = Image.fromFile(small.getPath())) {
+            assertNotNull(image);
+            assertFalse(image.isStreamed());
+        }
+        // a single bit per pixel keeps an image over the limit small to draw and write
+        BufferedImage large = new BufferedImage(8192, (int)(StreamedFileImage.MAX_IN_MEMORY_PIXELS / 8192) + 1,
+                BufferedImage.TYPE_BYTE_BINARY);
+        large.getRaster().setSample(3, 0, 0, 1);
+        try(Image image = Image.fromFile(write(large, "png").getPath())) {
+            assertNotNull(image);
+            assertTrue(image.isStreamed());
+            assertEquals(16384, image.getHeight());
+            int top = (16384 - large.getHeight()) / 2;
+            assertEquals(WHITE, image.getPixelArgb(3, top));
+            assertEquals(0xFF000000, image.getPixelArgb(4, top));
+        }
+    }
+
+    @Test
+    void decodingTimeGrowsLinearlyWithHeight() throws IOException {
+        File shortFile = write(gradient(400, 1024), "png");
+        File tallFile = write(gradient(400, 8192), "png");
+        long shortNanos = Long.MAX_VALUE, tallNanos = Long.MAX_VALUE;
+        for(int i = 0; i < 3; i++) {
+            shortNanos = Math.min(shortNanos, timeReading(shortFile));
+            tallNanos = Math.min(tallNanos, timeReading(tallFile));
+        }
+        // 8 times the rows, decoding the rows above every band again would take about 64 times as long
+        assertTrue(tallNanos < 20 * shortNanos, tallNanos / 1000000 + "ms vs " + shortNanos / 1000000 + "ms");
+    }
+
+    private static long timeReading(File file) throws IOException {
+        long start = System.nanoTime();
+        try(Image image = new StreamedFileImage(file.getPath(), StreamedFileImage.DEFAULT_BAND_ROWS)) {
+            int[] row = new int[image.getWidth()];
+            for(int y = 0; y < image.getHeight(); y++) {
+                image.getRowArgb(y, 0, row.length, row, 0);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static boolean isDecoderRunning() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().equals(DECODER_THREAD) && thread.isAlive());
+    }
+
+    private static BufferedImage gradient(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                row[x] = (x * 7 + y * 3) & 0xFFFFFF;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    private static File write(BufferedImage pixels, String format) throws IOException {
+        File file = File.createTempFile("pixels", "." + format);
+        file.deleteOnExit();
+        ImageIO.write(pixels, format, file);
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of SummedAreaTable, comparing its rectangle averages to averaging the pixels directly.
+ * @author eran_turgeman
+ */
+class SummedAreaTableTest {
+    private static final double TOLERANCE = 1e-7;
+
+    @Test
+    void tileAveragesMatchBruteForce() throws IOException {
+        // a 50*37 image is padded to 64*64, with margins of 7 columns and 13 rows on the left and top
+        Image image = imageOf(randomImage(50, 37, 1));
+        SummedAreaTable table = SummedAreaTable.of(image);
+        int[][] tileSizes = {{1, 1}, {2, 2}, {4, 4}, {8, 8}, {16, 16}, {64, 64}, {8, 16}, {5, 3}, {7, 13}};
+        for(int[] tileSize: tileSizes) {
+            int tileWidth = tileSize[0], tileHeight = tileSize[1];
+            for(int y = 0; y + tileHeight <= image.getHeight(); y += tileHeight) {
+                for(int x = 0; x + tileWidth <= image.getWidth(); x += tileWidth) {
+                    assertAverage(image, table, x, y, tileWidth, tileHeight);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rectanglesCrossingTheMarginsMatchBruteForce() throws IOException {
+        Image image = imageOf(randomImage(50, 37, 2));
+        SummedAreaTable table = SummedAreaTable.of(image);
+        Random random = new Random(3);
+        for(int i = 0; i < 1000; i++) {
+            int x = random.nextInt(image.getWidth()), y = random.nextInt(image.getHeight());
+            int width = 1 + random.nextInt(image.getWidth() - x);
+            int height = 1 + random.nextInt(image.getHeight() - y);
+            assertAverage(image, table, x, y, width, height);
+        }
+        // entirely in the margins, and covering the content and all the margins around it
+        assertAverage(image, table, 0, 0, 7, 64);
+        assertAverage(image, table, 0, 50, 64, 14);
+        assertAverage(image, table, 0, 0, 64, 64);
+    }
+
+    @Test
+    void unpaddedImageMatchesBruteForce() {
+        BufferedImage pixels = randomImage(24, 10, 4);
+        Image image = new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                return new Color(pixels.getRGB(x, y));
+            }
+
+            @Override
+            public int getWidth() {
+                return pixels.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return pixels.getHeight();
+            }
+        };
+        SummedAreaTable table = SummedAreaTable.of(image);
+        for(int y = 0; y + 5 <= image.getHeight(); y += 5) {
+            for(int x = 0; x + 3 <= image.getWidth(); x += 3) {
+                assertAverage(image, table, x, y, 3, 5);
+            }
+        }
+        assertAverage(image, table, 0, 0, 24, 10);
+    }
+
+    @Test
+    void rectanglesOutsideTheImageAreRejected() throws IOException {
+        SummedAreaTable table = SummedAreaTable.of(imageOf(randomImage(50, 37, 5)));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.averageBrightness(-1, 0, 4, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.averageBrightness(62, 0, 4, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> table.averageBrightness(0, 0, 0, 4));
+    }
+
+    private static void assertAverage(Image image, SummedAreaTable table, int x, int y, int width, int height) {
+        assertEquals(bruteForceAverage(image, x, y, width, height), table.averageBrightness(x, y, width, height),
+                TOLERANCE, () -> "rectangle " + width + "*" + height + " at (" + x + "," + y + ")");
+    }
+
+    /*
+     * the average grey value of the rectangle's pixels, with the grey conversion the matchers use
+     */
+    static double bruteForceAverage(Image image, int x, int y, int width, int height) {
+        double sum = 0;
+        for(int row = y; row < y + height; row++) {
+            for(int col = x; col < x + width; col++) {
+                Color color = image.getPixel(col, row);
+                sum += (color.getRed() * 0.2126 + color.getGreen() * 0.7152 + color.getBlue() * 0.0722) / 255;
+            }
+        }
+        return sum / ((double)width * height);
+    }
+
+    /*
+     * the image as the Shell loads it, padded by FileImage
+     */
+    static Image imageOf(BufferedImage pixels) throws IOException {
+        File file = File.createTempFile("pixels", ".png");
+        file.deleteOnExit();
+        ImageIO.write(pixels, "png", file);
+        return new FileImage(file.getPath());
+    }
+
+    static BufferedImage randomImage(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+}
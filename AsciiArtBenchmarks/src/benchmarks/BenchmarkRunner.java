@@ -0,0 +1,23 @@
+package benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+
+/**
+ * Runs the AsciiArt benchmarks. The module has to be compiled with annotation processing enabled, so the
+ * JMH generator creates the benchmark classes.
+ * Any JMH command line option can be given, for example running only the image benchmarks on a larger
+ * synthetic image:
+ *     BenchmarkRunner ImageBenchmark -p imageWidth=4096
+ * Without arguments every benchmark of the package is run.
+ * @author eran_turgeman
+ */
+public class BenchmarkRunner {
+    private static final String ALL_BENCHMARKS = BenchmarkRunner.class.getPackageName() + "\\..*";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Main.main(args.length == 0 ? new String[]{ALL_BENCHMARKS} : args);
+    }
+}
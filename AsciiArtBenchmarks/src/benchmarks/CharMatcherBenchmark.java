@@ -0,0 +1,92 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks converting an image to chars with BrightnessImgCharMatcher and ShapeImgCharMatcher,
+ * sequentially and in parallel.
+ * @author eran_turgeman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CharMatcherBenchmark {
+    private static final String FONT = "Courier New";
+    // the fewest pixels a char may cover in the Shell
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+
+    @Param({"512", "2048"})
+    public int imageWidth;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Image image;
+    private Character[] charSet;
+    private Character[] otherCharSet;
+    private ForkJoinPool pool;
+    private BrightnessImgCharMatcher warmMatcher;
+    private boolean useOtherCharSet;
+
+    @Setup
+    public void setup() {
+        image = SyntheticImages.create(imageWidth);
+        charSet = SyntheticImages.printableChars();
+        otherCharSet = new Character[charSet.length / 2];
+        System.arraycopy(charSet, 0, otherCharSet, 0, otherCharSet.length);
+        pool = parallel ? ForkJoinPool.commonPool() : null;
+        warmMatcher = new BrightnessImgCharMatcher(image, FONT, pool);
+        warmMatcher.chooseChars(image.getWidth() / MIN_PIXELS_PER_CHAR, charSet);
+    }
+
+    /**
+     * A fresh matcher converting at every resolution the Shell can reach, from one char in a row up to
+     * the finest one, the way "res up" walks them
+     */
+    @Benchmark
+    public void chooseCharsEveryLevel(Blackhole blackhole) {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT, pool);
+        for(int charsInRow = 1; charsInRow <= image.getWidth() / MIN_PIXELS_PER_CHAR; charsInRow *= 2) {
+            blackhole.consume(matcher.chooseChars(charsInRow, charSet));
+        }
+    }
+
+    /**
+     * A fresh matcher converting once, at the finest resolution
+     */
+    @Benchmark
+    public char[][] chooseCharsFinest() {
+        return new BrightnessImgCharMatcher(image, FONT, pool)
+                .chooseChars(image.getWidth() / MIN_PIXELS_PER_CHAR, charSet);
+    }
+
+    /**
+     * Converting again at the finest resolution after the charset changed, as "add"/"remove" and then
+     * "render" do in the Shell
+     */
+    @Benchmark
+    public char[][] charsetChange() {
+        useOtherCharSet = !useOtherCharSet;
+        return warmMatcher.chooseChars(image.getWidth() / MIN_PIXELS_PER_CHAR,
+                useOtherCharSet ? otherCharSet : charSet);
+    }
+
+    /**
+     * Matching the shapes of the tiles to the glyphs at the finest resolution
+     */
+    @Benchmark
+    public char[][] shapeMatchingFinest() {
+        return new ShapeImgCharMatcher(image, FONT, pool)
+                .chooseChars(image.getWidth() / MIN_PIXELS_PER_CHAR, charSet);
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import ascii_art.img_to_char.CharRenderer;
+import ascii_art.img_to_char.GlyphAtlas;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rasterising the printable chars with CharRenderer, both rendering them and reading them
+ * back from the shared glyph atlas.
+ * @author eran_turgeman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlyphBenchmark {
+    private static final String FONT = "Courier New";
+
+    @Param({"16", "64"})
+    public int glyphPixels;
+
+    private Character[] chars;
+
+    @Setup
+    public void setup() {
+        chars = SyntheticImages.printableChars();
+        for(char c: chars) {
+            GlyphAtlas.getShared().countWhitePixels(c, glyphPixels, FONT);
+        }
+    }
+
+    /**
+     * Rendering every char into an empty atlas
+     */
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        GlyphAtlas atlas = new GlyphAtlas();
+        for(char c: chars) {
+            blackhole.consume(atlas.countWhitePixels(c, glyphPixels, FONT));
+        }
+    }
+
+    /**
+     * Reading the image of every char through CharRenderer, from the shared atlas
+     */
+    @Benchmark
+    public void getImgCached(Blackhole blackhole) {
+        for(char c: chars) {
+            blackhole.consume(CharRenderer.getImg(c, glyphPixels, FONT));
+        }
+    }
+}
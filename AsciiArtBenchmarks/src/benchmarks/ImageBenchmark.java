@@ -0,0 +1,143 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the traversals of the image package: iterating the pixels, iterating square sub-images and
+ * using the sub-images as hash keys.
+ * @author eran_turgeman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+    @Param({"512", "2048"})
+    public int imageWidth;
+
+    @Param({"4", "16"})
+    public int tilePixels;
+
+    private Image image;
+    private Map<Image, Integer> tiles;
+
+    @Setup
+    public void setup() {
+        image = SyntheticImages.create(imageWidth);
+        tiles = new HashMap<>();
+        for(Image tile: image.squareSubImagesOfSize(tilePixels)) {
+            tiles.put(tile, tiles.size());
+        }
+    }
+
+    /**
+     * Iterating all the pixels as Colors
+     */
+    @Benchmark
+    public int pixels() {
+        int sum = 0;
+        for(Color color: image.pixels()) {
+            sum += color.getRGB();
+        }
+        return sum;
+    }
+
+    /**
+     * Reading all the pixels as packed ARGB ints, for comparison with pixels()
+     */
+    @Benchmark
+    public int pixelsArgb() {
+        int sum = 0;
+        for(int y = 0; y < image.getHeight(); y++) {
+            for(int x = 0; x < image.getWidth(); x++) {
+                sum += image.getPixelArgb(x, y);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Visiting all the pixels with the primitive pixel visitor
+     */
+    @Benchmark
+    public int forEachPixel() {
+        int[] sum = new int[1];
+        image.forEachPixel((x, y, argb) -> sum[0] += argb);
+        return sum[0];
+    }
+
+    /**
+     * Reading all the pixels a row at a time into a buffer
+     */
+    @Benchmark
+    public int rowsArgb() {
+        int[] row = new int[image.getWidth()];
+        int sum = 0;
+        for(int y = 0; y < image.getHeight(); y++) {
+            image.getRowArgb(y, 0, row.length, row, 0);
+            for(int argb: row) {
+                sum += argb;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Summing all the pixels with a parallel stream
+     */
+    @Benchmark
+    public long pixelArgbParallelStream() {
+        return image.pixelArgbStream().parallel().asLongStream().sum();
+    }
+
+    /**
+     * Reading one pixel of every square sub-image with a parallel stream
+     */
+    @Benchmark
+    public int squareSubImageParallelStream() {
+        return image.squareSubImageStream(tilePixels).parallel().mapToInt(tile -> tile.getPixelArgb(0, 0)).sum();
+    }
+
+    /**
+     * Iterating the square sub-images and reading one pixel of each
+     */
+    @Benchmark
+    public int squareSubImages() {
+        int sum = 0;
+        for(Image tile: image.squareSubImagesOfSize(tilePixels)) {
+            sum += tile.getPixelArgb(0, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Filling a HashMap with the square sub-images as keys, which hashes every sub-image
+     */
+    @Benchmark
+    public Map<Image, Integer> subImageHashMapPut() {
+        Map<Image, Integer> map = new HashMap<>();
+        for(Image tile: image.squareSubImagesOfSize(tilePixels)) {
+            map.put(tile, map.size());
+        }
+        return map;
+    }
+
+    /**
+     * Looking up new, equal, sub-images in a filled HashMap, which hashes and compares every sub-image
+     */
+    @Benchmark
+    public void subImageHashMapGet(Blackhole blackhole) {
+        for(Image tile: image.squareSubImagesOfSize(tilePixels)) {
+            blackhole.consume(tiles.get(tile));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing a converted picture with HtmlAsciiOutput, in its writer, channel and gzip modes,
+ * and with ConsoleAsciiOutput into a discarding channel, in monochrome and in color.
+ * @author eran_turgeman
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    private static final String FONT = "Courier New";
+
+    @Param({"128", "512"})
+    public int charsInRow;
+
+    private char[][] chars;
+    private int[][] colors;
+    private File htmlFile;
+    private PrintStream originalOut;
+    private ConsoleAsciiOutput console;
+
+    @Setup
+    public void setup() throws IOException {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(SyntheticImages.create(charsInRow * 2), FONT);
+        colors = matcher.chooseColors(charsInRow);
+        chars = matcher.chooseChars(charsInRow, SyntheticImages.printableChars());
+        htmlFile = File.createTempFile("ascii_benchmark", ".html");
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        WritableByteChannel discard = Channels.newChannel(OutputStream.nullOutputStream());
+        console = new ConsoleAsciiOutput(true, discard);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+        htmlFile.delete();
+    }
+
+    @Benchmark
+    public void html() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT).output(chars);
+    }
+
+    @Benchmark
+    public void htmlChannel() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT, true, false).output(chars);
+    }
+
+    @Benchmark
+    public void htmlGzip() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT, false, true).output(chars);
+    }
+
+    @Benchmark
+    public void htmlColored() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT, true, false).output(chars, colors);
+    }
+
+    @Benchmark
+    public void console() {
+        console.output(chars);
+    }
+
+    @Benchmark
+    public void consoleColored() {
+        console.output(chars, colors);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import image.Image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Draws the images the benchmarks run on, so results are reproducible without asset files.
+ * The same size and seed always give the same image.
+ * @author eran_turgeman
+ */
+class SyntheticImages {
+    private static final long SEED = 0x5EEDL;
+    private static final int SHAPES = 64;
+    // the image is wider than it is high, so the padding of non power of 2 images is exercised too
+    private static final double HEIGHT_RATIO = 0.75;
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Draws a picture of a brightness gradient covered with random shapes
+     * @param width the width of the picture in pixels, its height is three quarters of it
+     * @return the picture, padded like images opened with Image.fromFile
+     */
+    static Image create(int width) {
+        int height = Math.max(1, (int)(width * HEIGHT_RATIO));
+        BufferedImage picture = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = picture.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.WHITE, width, height, Color.DARK_GRAY));
+        graphics.fillRect(0, 0, width, height);
+        Random random = new Random(SEED);
+        for(int i = 0; i < SHAPES; i++) {
+            graphics.setColor(new Color(random.nextInt(0x1000000)));
+            int x = random.nextInt(width), y = random.nextInt(height);
+            int shapeWidth = 1 + random.nextInt(Math.max(1, width / 4));
+            int shapeHeight = 1 + random.nextInt(Math.max(1, height / 4));
+            if(random.nextBoolean()) {
+                graphics.fillOval(x, y, shapeWidth, shapeHeight);
+            } else {
+                graphics.fillRect(x, y, shapeWidth, shapeHeight);
+            }
+        }
+        graphics.dispose();
+        return Image.fromBufferedImage(picture);
+    }
+
+    /**
+     * @return the printable ascii chars, the largest charset the Shell offers
+     */
+    static Character[] printableChars() {
+        Character[] chars = new Character[127 - ' '];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = (char)(' ' + i);
+        }
+        return chars;
+    }
+}